@@ -16,11 +16,12 @@
 package io.helidon.tests.integration.tools.service;
 
 import javax.json.Json;
-import javax.json.JsonArrayBuilder;
 import javax.json.JsonObject;
 import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
 
+import io.helidon.config.Config;
+
 /**
  * Response helper methods.
  */
@@ -70,43 +71,31 @@ public class AppResponse {
      *      ]
      * }</pre>
      *
+     * Stack traces are limited according to configured level of detail, see {@link #configure(Config)}.
+     *
      * @param t {@Link Throwable} to be stored in JSON response
      * @return JSON response with exception status and attached stack trace.
      */
     public static JsonObject exceptionStatus(final Throwable t) {
-        final JsonObjectBuilder job = Json.createObjectBuilder();
-        job.add("status", "exception");
-        final JsonArrayBuilder jabSt = Json.createArrayBuilder();
-        Throwable current = t;
-        while (current != null) {
-            jabSt.add(buildStackTrace(current));
-            current = current.getCause();
-        }
-        job.add("stacktrace", jabSt.build());
-        return job.build();
+        return ExceptionStatus.instance().build(t);
     }
 
-    private static JsonObject buildStackTrace(final Throwable t) {
-        JsonObjectBuilder jobSt = Json.createObjectBuilder();
-        jobSt.add("class", t.getClass().getName());
-        jobSt.add("message", t.getMessage());
-        final JsonArrayBuilder jab = Json.createArrayBuilder();
-        final StackTraceElement[] elements = t.getStackTrace();
-        if (elements != null) {
-            for (final StackTraceElement element : elements) {
-                JsonObjectBuilder jobElement = Json.createObjectBuilder();
-                jobElement.add("file", element.getFileName() != null ? Json.createValue(element.getFileName()) : JsonValue.NULL);
-                jobElement.add("line", element.getLineNumber());
-                jobElement.add("module", element.getModuleName() != null ? Json.createValue(element.getModuleName()) : JsonValue.NULL);
-                jobElement.add("modVersion", element.getModuleVersion() != null ? Json.createValue(element.getModuleVersion()) : JsonValue.NULL);
-                jobElement.add("loader", element.getClassLoaderName() != null ? Json.createValue(element.getClassLoaderName()) : JsonValue.NULL);
-                jobElement.add("class", element.getClassName() != null ? Json.createValue(element.getClassName()) : JsonValue.NULL);
-                jobElement.add("method", element.getMethodName() != null ? Json.createValue(element.getMethodName()) : JsonValue.NULL);
-                jab.add(jobElement.build());
-            }
-        }
-        jobSt.add("trace", jab.build());
-        return jobSt.build();
+    /**
+     * Configure {@code exception} status responses.
+     * <p>Configuration node contains:
+     * <ul>
+     *     <li>{@code detail}: stack traces are written completely ({@code full}, default),
+     *         limited to first frames ({@code frames}) or not at all ({@code message})</li>
+     *     <li>{@code max-frames}: number of frames written in {@code frames} level</li>
+     *     <li>{@code cache-size}: number of pre-serialized responses of repeated identical failures
+     *         sent by {@link AppResponseWriter#sendException(io.helidon.webserver.ServerResponse, Throwable)}</li>
+     *     <li>{@code full-trace-sampling}: every N-th response carries complete stack traces</li>
+     * </ul>
+     *
+     * @param config exception responses configuration node
+     */
+    public static void configure(final Config config) {
+        ExceptionStatus.configure(config);
     }
 
 }
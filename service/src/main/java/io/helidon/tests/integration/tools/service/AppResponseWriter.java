@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.helidon.tests.integration.tools.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+
+import javax.json.JsonValue;
+
+import io.helidon.common.http.DataChunk;
+import io.helidon.common.http.MediaType;
+import io.helidon.common.reactive.Multi;
+import io.helidon.webserver.ServerResponse;
+
+/**
+ * Response writer of {@code OK} and {@code exception} status responses.
+ * <p>Writes the same JSON content as {@link AppResponse#okStatus(JsonValue)} serialized by JSON-P,
+ * without building the envelope object. Envelope is sent as pre-encoded immutable byte fragments
+ * around the data:<br>
+ * <pre> {"status":"OK","data":&lt;data&gt;}</pre>
+ * Complete response with {@code null} data, which is returned by all requests without result,
+ * is encoded once and shared by all responses.
+ */
+public final class AppResponseWriter {
+
+    private static final ByteBuffer PREFIX = constant("{\"status\":\"OK\",\"data\":");
+    private static final ByteBuffer SUFFIX = constant("}");
+    private static final ByteBuffer OK_NULL = constant("{\"status\":\"OK\",\"data\":null}");
+
+    private AppResponseWriter() {
+        throw new UnsupportedOperationException("Instances of AppResponseWriter class are not allowed");
+    }
+
+    /**
+     * Send response with {@code OK} status and {@code null} data.
+     *
+     * @param response HTTP response
+     */
+    public static void sendOk(final ServerResponse response) {
+        response.headers().contentType(MediaType.APPLICATION_JSON);
+        response.headers().contentLength(OK_NULL.remaining());
+        response.send(Multi.singleton(DataChunk.create(true, OK_NULL.duplicate())));
+    }
+
+    /**
+     * Send response with {@code OK} status and attached data JSON value.
+     *
+     * @param response HTTP response
+     * @param data attached data JSON value
+     */
+    public static void sendOk(final ServerResponse response, final JsonValue data) {
+        if (data == null || data == JsonValue.NULL) {
+            sendOk(response);
+        } else {
+            sendOk(response, data.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Send response with {@code OK} status and attached already encoded data.
+     *
+     * @param response HTTP response
+     * @param data UTF-8 encoded JSON value
+     */
+    public static void sendOk(final ServerResponse response, final byte[] data) {
+        response.headers().contentType(MediaType.APPLICATION_JSON);
+        response.headers().contentLength(PREFIX.remaining() + data.length + SUFFIX.remaining());
+        response.send(Multi.just(
+                DataChunk.create(false, PREFIX.duplicate()),
+                DataChunk.create(false, ByteBuffer.wrap(data)),
+                DataChunk.create(true, SUFFIX.duplicate())));
+    }
+
+    /**
+     * Send response with {@code OK} status and attached data streamed as content chunks.
+     * Streamed data must form single JSON value.
+     *
+     * @param response HTTP response
+     * @param data UTF-8 encoded JSON value chunks
+     */
+    public static void sendOk(final ServerResponse response, final Flow.Publisher<DataChunk> data) {
+        response.headers().contentType(MediaType.APPLICATION_JSON);
+        response.send(Multi.concat(
+                Multi.singleton(DataChunk.create(false, PREFIX.duplicate())),
+                data,
+                Multi.singleton(DataChunk.create(true, SUFFIX.duplicate()))));
+    }
+
+    /**
+     * Send response with {@code exception} status.
+     * Response content is the same as serialized {@link AppResponse#exceptionStatus(Throwable)},
+     * responses of repeated identical failures are sent from the cache of serialized responses.
+     *
+     * @param response HTTP response
+     * @param t {@link Throwable} to be stored in JSON response
+     */
+    public static void sendException(final ServerResponse response, final Throwable t) {
+        final byte[] content = ExceptionStatus.instance().serialize(t);
+        response.headers().contentType(MediaType.APPLICATION_JSON);
+        response.headers().contentLength(content.length);
+        response.send(Multi.singleton(DataChunk.create(true, ByteBuffer.wrap(content).asReadOnlyBuffer())));
+    }
+
+    private static ByteBuffer constant(final String json) {
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+}
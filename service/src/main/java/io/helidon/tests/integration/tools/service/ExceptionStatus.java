@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.helidon.tests.integration.tools.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+import io.helidon.config.Config;
+
+/**
+ * Builder of {@code exception} status responses with configured level of detail.
+ * <p>Stack trace of each exception in the cause chain is written completely ({@code full}),
+ * limited to first frames ({@code frames}) or not at all ({@code message}). Class and message
+ * of each exception are always written. Stack traces are not even retrieved in {@code message}
+ * level, because materializing stack trace elements is the most expensive part of the response.
+ * <p>Every N-th response is sampled and carries complete stack traces regardless of the level.
+ * Serialized responses are cached by class and message of each exception in the chain, so repeated
+ * identical failures, e.g. during database outage, share single pre-serialized response with stack
+ * traces of the first occurrence.
+ */
+final class ExceptionStatus {
+
+    private static final Logger LOGGER = Logger.getLogger(ExceptionStatus.class.getName());
+
+    /**
+     * Level of exception detail written into response.
+     */
+    enum Detail {
+        /** Complete stack traces. */
+        FULL,
+        /** Stack traces limited to configured number of frames. */
+        FRAMES,
+        /** Exception classes and messages only. */
+        MESSAGE;
+
+        static Detail parse(final String value) {
+            switch (value.toLowerCase()) {
+                case "full":
+                    return FULL;
+                case "frames":
+                    return FRAMES;
+                case "message":
+                    return MESSAGE;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown error detail level: %s", value));
+            }
+        }
+    }
+
+    // Response settings compatible with original exceptionStatus behavior.
+    private static volatile ExceptionStatus instance = new ExceptionStatus(Detail.FULL, 0, 0, 0);
+
+    private final Detail detail;
+    private final int maxFrames;
+    private final int sampling;
+    private final Map<String, byte[]> cache;
+    private final AtomicLong responses;
+
+    private ExceptionStatus(final Detail detail, final int maxFrames, final int cacheSize, final int sampling) {
+        this.detail = detail;
+        this.maxFrames = maxFrames;
+        this.sampling = sampling;
+        this.cache = cacheSize > 0 ? lruMap(cacheSize) : null;
+        this.responses = new AtomicLong();
+    }
+
+    /**
+     * Configure exception responses from {@code app.errors} configuration node.
+     *
+     * @param config exception responses configuration
+     */
+    static void configure(final Config config) {
+        final Detail detail = config.get("detail").asString().map(Detail::parse).orElse(Detail.FULL);
+        final int maxFrames = config.get("max-frames").asInt().orElse(10);
+        final int cacheSize = config.get("cache-size").asInt().orElse(0);
+        final int sampling = config.get("full-trace-sampling").asInt().orElse(0);
+        LOGGER.info(() -> String.format("Error responses detail: %s, max frames: %d, cache size: %d, full trace sampling: %d",
+                                        detail, maxFrames, cacheSize, sampling));
+        instance = new ExceptionStatus(detail, maxFrames, cacheSize, sampling);
+    }
+
+    /**
+     * Current exception responses builder.
+     *
+     * @return exception responses builder
+     */
+    static ExceptionStatus instance() {
+        return instance;
+    }
+
+    /**
+     * Build JSON response with {@code exception} status.
+     *
+     * @param t exception to be stored in JSON response
+     * @return JSON response
+     */
+    JsonObject build(final Throwable t) {
+        return build(t, sampled() ? Detail.FULL : detail);
+    }
+
+    /**
+     * Serialized JSON response with {@code exception} status.
+     * Response of repeated failure is returned from the cache.
+     *
+     * @param t exception to be stored in JSON response
+     * @return UTF-8 encoded JSON response
+     */
+    byte[] serialize(final Throwable t) {
+        if (sampled()) {
+            return toBytes(build(t, Detail.FULL));
+        }
+        if (cache == null) {
+            return toBytes(build(t, detail));
+        }
+        final String key = key(t);
+        byte[] response;
+        synchronized (cache) {
+            response = cache.get(key);
+        }
+        if (response == null) {
+            response = toBytes(build(t, detail));
+            synchronized (cache) {
+                cache.put(key, response);
+            }
+        }
+        return response;
+    }
+
+    // Every sampling-th response carries full stack traces.
+    private boolean sampled() {
+        return sampling > 0 && detail != Detail.FULL && responses.incrementAndGet() % sampling == 0;
+    }
+
+    private JsonObject build(final Throwable t, final Detail level) {
+        final JsonObjectBuilder job = Json.createObjectBuilder();
+        job.add("status", "exception");
+        final JsonArrayBuilder jabSt = Json.createArrayBuilder();
+        Throwable current = t;
+        while (current != null) {
+            jabSt.add(buildStackTrace(current, level));
+            current = current.getCause();
+        }
+        job.add("stacktrace", jabSt.build());
+        return job.build();
+    }
+
+    private JsonObject buildStackTrace(final Throwable t, final Detail level) {
+        final JsonObjectBuilder jobSt = Json.createObjectBuilder();
+        jobSt.add("class", t.getClass().getName());
+        jobSt.add("message", message(t));
+        final JsonArrayBuilder jab = Json.createArrayBuilder();
+        final StackTraceElement[] elements = level == Detail.MESSAGE ? null : t.getStackTrace();
+        if (elements != null) {
+            final int frames = level == Detail.FRAMES ? Math.min(maxFrames, elements.length) : elements.length;
+            for (int i = 0; i < frames; i++) {
+                jab.add(buildElement(elements[i]));
+            }
+            if (frames < elements.length) {
+                jobSt.add("omitted", elements.length - frames);
+            }
+        }
+        jobSt.add("trace", jab.build());
+        return jobSt.build();
+    }
+
+    private static JsonObject buildElement(final StackTraceElement element) {
+        final JsonObjectBuilder jobElement = Json.createObjectBuilder();
+        jobElement.add("file", element.getFileName() != null ? Json.createValue(element.getFileName()) : JsonValue.NULL);
+        jobElement.add("line", element.getLineNumber());
+        jobElement.add("module", element.getModuleName() != null ? Json.createValue(element.getModuleName()) : JsonValue.NULL);
+        jobElement.add("modVersion", element.getModuleVersion() != null ? Json.createValue(element.getModuleVersion()) : JsonValue.NULL);
+        jobElement.add("loader", element.getClassLoaderName() != null ? Json.createValue(element.getClassLoaderName()) : JsonValue.NULL);
+        jobElement.add("class", element.getClassName() != null ? Json.createValue(element.getClassName()) : JsonValue.NULL);
+        jobElement.add("method", element.getMethodName() != null ? Json.createValue(element.getMethodName()) : JsonValue.NULL);
+        return jobElement.build();
+    }
+
+    // Exception without message is described by its class name, so client always gets message string.
+    private static String message(final Throwable t) {
+        return t.getMessage() != null ? t.getMessage() : t.getClass().getName();
+    }
+
+    // Failures are identical when all exceptions in the cause chain have the same class and message.
+    private static String key(final Throwable t) {
+        final StringBuilder sb = new StringBuilder(128);
+        Throwable current = t;
+        while (current != null) {
+            sb.append(current.getClass().getName()).append(':').append(current.getMessage()).append('\n');
+            current = current.getCause();
+        }
+        return sb.toString();
+    }
+
+    private static byte[] toBytes(final JsonObject response) {
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, byte[]> lruMap(final int maxSize) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, byte[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.helidon.tests.integration.tools.service;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.Json;
+import javax.json.JsonValue;
+
+import io.helidon.common.http.DataChunk;
+import io.helidon.common.reactive.Multi;
+import io.helidon.webserver.ResponseHeaders;
+import io.helidon.webserver.ServerResponse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Test that {@link AppResponseWriter} writes the same bytes as JSON-P serialized {@link AppResponse#okStatus(JsonValue)}.
+ */
+public class AppResponseWriterTest {
+
+    // Strings with characters JSON-P escapes and characters it writes as they are
+    private static final List<String> STRINGS = List.of(
+            "",
+            "Pikachu",
+            "quote \" and backslash \\ and slash /",
+            "control \b\f\n\r\t\u0000\u001f\u007f",
+            "Pokémon ポケモン",
+            "surrogate pair 🐉");
+
+    // Test response without data
+    @Test
+    void testNull() {
+        Recorded recorded = new Recorded();
+        AppResponseWriter.sendOk(recorded.response());
+        recorded.verify(JsonValue.NULL);
+        recorded = new Recorded();
+        AppResponseWriter.sendOk(recorded.response(), (JsonValue) null);
+        recorded.verify(JsonValue.NULL);
+        recorded = new Recorded();
+        AppResponseWriter.sendOk(recorded.response(), JsonValue.NULL);
+        recorded.verify(JsonValue.NULL);
+    }
+
+    // Test response with string data
+    @Test
+    void testString() {
+        for (String value : STRINGS) {
+            verify(Json.createValue(value));
+        }
+    }
+
+    // Test response with object data
+    @Test
+    void testObject() {
+        verify(JsonValue.EMPTY_JSON_OBJECT);
+        for (String value : STRINGS) {
+            verify(Json.createObjectBuilder()
+                           .add("id", 1)
+                           .add(value, value)
+                           .addNull("type")
+                           .add("nested", Json.createObjectBuilder().add("value", value))
+                           .build());
+        }
+    }
+
+    // Test response with array data
+    @Test
+    void testArray() {
+        verify(JsonValue.EMPTY_JSON_ARRAY);
+        for (String value : STRINGS) {
+            verify(Json.createArrayBuilder()
+                           .add(1)
+                           .add(-1.5)
+                           .add(true)
+                           .addNull()
+                           .add(value)
+                           .add(Json.createObjectBuilder().add("name", value))
+                           .build());
+        }
+    }
+
+    // Every data variant of the writer must produce JSON-P response bytes.
+    private static void verify(JsonValue data) {
+        byte[] encoded = data.toString().getBytes(StandardCharsets.UTF_8);
+        // Streamed chunks may split multi-byte characters
+        int half = encoded.length / 2;
+        Recorded recorded = new Recorded();
+        AppResponseWriter.sendOk(recorded.response(), data);
+        recorded.verify(data);
+        recorded = new Recorded();
+        AppResponseWriter.sendOk(recorded.response(), encoded);
+        recorded.verify(data);
+        recorded = new Recorded();
+        AppResponseWriter.sendOk(recorded.response(),
+                                 Multi.just(DataChunk.create(ByteBuffer.wrap(encoded, 0, half)),
+                                            DataChunk.create(ByteBuffer.wrap(encoded, half, encoded.length - half))));
+        recorded.verify(data);
+    }
+
+    // Response which records content length header and sent content.
+    private static final class Recorded {
+
+        private long contentLength = -1;
+        private Flow.Publisher<DataChunk> content;
+
+        @SuppressWarnings("unchecked")
+        private ServerResponse response() {
+            ResponseHeaders headers = (ResponseHeaders) Proxy.newProxyInstance(
+                    ResponseHeaders.class.getClassLoader(),
+                    new Class<?>[] {ResponseHeaders.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("contentLength") && args != null) {
+                            contentLength = (Long) args[0];
+                        }
+                        return null;
+                    });
+            return (ServerResponse) Proxy.newProxyInstance(
+                    ServerResponse.class.getClassLoader(),
+                    new Class<?>[] {ServerResponse.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "headers":
+                                return headers;
+                            case "send":
+                                content = (Flow.Publisher<DataChunk>) args[0];
+                                return null;
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+
+        private void verify(JsonValue data) {
+            byte[] expected = AppResponse.okStatus(data).toString().getBytes(StandardCharsets.UTF_8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Multi.create(content)
+                    .forEach(chunk -> out.writeBytes(chunk.bytes()))
+                    .await(10, TimeUnit.SECONDS);
+            assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8),
+                       equalTo(new String(expected, StandardCharsets.UTF_8)));
+            assertThat(out.toByteArray(), equalTo(expected));
+            if (contentLength >= 0) {
+                assertThat(contentLength, equalTo((long) expected.length));
+            }
+        }
+
+    }
+
+}
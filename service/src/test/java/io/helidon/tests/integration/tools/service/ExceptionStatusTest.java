@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.helidon.tests.integration.tools.service;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+/**
+ * Test detail levels, caching and sampling of {@code exception} status responses.
+ */
+public class ExceptionStatusTest {
+
+    // Restore default responses of other tests.
+    @AfterEach
+    void reset() {
+        ExceptionStatus.configure(Config.empty());
+    }
+
+    // Test that complete stack trace of every exception in the cause chain is written
+    @Test
+    void testFull() {
+        ExceptionStatus status = configure(Map.of("detail", "full"));
+        Exception cause = new IllegalStateException("Cause");
+        Exception ex = new RuntimeException("Failure", cause);
+        JsonArray stacktrace = verifyStatus(status.build(ex), ex);
+        for (int i = 0; i < stacktrace.size(); i++) {
+            JsonObject trace = stacktrace.getJsonObject(i);
+            StackTraceElement[] elements = (i == 0 ? ex : cause).getStackTrace();
+            assertThat(trace.getJsonArray("trace").size(), is(elements.length));
+            assertThat(trace.containsKey("omitted"), is(false));
+            JsonObject first = trace.getJsonArray("trace").getJsonObject(0);
+            assertThat(first.getString("class"), is(elements[0].getClassName()));
+            assertThat(first.getString("method"), is(elements[0].getMethodName()));
+            assertThat(first.getInt("line"), is(elements[0].getLineNumber()));
+        }
+    }
+
+    // Test that stack traces are limited to configured number of frames
+    @Test
+    void testFrames() {
+        ExceptionStatus status = configure(Map.of("detail", "frames", "max-frames", "2"));
+        Exception ex = new RuntimeException("Failure", new IllegalStateException("Cause"));
+        JsonArray stacktrace = verifyStatus(status.build(ex), ex);
+        for (int i = 0; i < stacktrace.size(); i++) {
+            JsonObject trace = stacktrace.getJsonObject(i);
+            int frames = (i == 0 ? ex : ex.getCause()).getStackTrace().length;
+            assertThat(frames, greaterThan(2));
+            assertThat(trace.getJsonArray("trace").size(), is(2));
+            assertThat(trace.getInt("omitted"), is(frames - 2));
+        }
+    }
+
+    // Test that only classes and messages are written and exception without message is described by its class
+    @Test
+    void testMessage() {
+        ExceptionStatus status = configure(Map.of("detail", "message"));
+        Exception ex = new RuntimeException("Failure", new IllegalStateException());
+        JsonArray stacktrace = verifyStatus(parse(status.serialize(ex)), ex);
+        for (int i = 0; i < stacktrace.size(); i++) {
+            assertThat(stacktrace.getJsonObject(i).getJsonArray("trace").size(), is(0));
+            assertThat(stacktrace.getJsonObject(i).containsKey("omitted"), is(false));
+        }
+        assertThat(stacktrace.getJsonObject(1).getString("message"), is(IllegalStateException.class.getName()));
+    }
+
+    // Test that failures with equal class and message of every exception in the chain share cached response
+    @Test
+    void testCacheKey() {
+        ExceptionStatus status = configure(Map.of("detail", "frames", "max-frames", "1", "cache-size", "2"));
+        byte[] first = status.serialize(failure("Timeout", "Connection lost"));
+        // Equal chain thrown from other place returns response with stack trace of the first occurrence
+        byte[] second = status.serialize(otherFailure("Timeout", "Connection lost"));
+        assertThat(second, sameInstance(first));
+        // Different message or cause is not the same failure
+        byte[] message = status.serialize(failure("Overloaded", "Connection lost"));
+        assertThat(message, not(sameInstance(first)));
+        assertThat(status.serialize(failure("Timeout", "Node down")), not(sameInstance(first)));
+        assertThat(status.serialize(new RuntimeException("Timeout")), not(sameInstance(first)));
+        JsonArray stacktrace = verifyStatus(parse(second), failure("Timeout", "Connection lost"));
+        assertThat(stacktrace.getJsonObject(0).getJsonArray("trace").getJsonObject(0).getString("method"), is("failure"));
+    }
+
+    // Test that least recently used response is evicted from the cache
+    @Test
+    void testCacheEviction() {
+        ExceptionStatus status = configure(Map.of("detail", "message", "cache-size", "2"));
+        byte[] a = status.serialize(failure("A", "Cause"));
+        byte[] b = status.serialize(failure("B", "Cause"));
+        assertThat(status.serialize(failure("A", "Cause")), sameInstance(a));
+        status.serialize(failure("C", "Cause"));
+        assertThat(status.serialize(failure("A", "Cause")), sameInstance(a));
+        assertThat(status.serialize(failure("B", "Cause")), not(sameInstance(b)));
+    }
+
+    // Test that every N-th response carries complete stack traces and is not served from the cache
+    @Test
+    void testSampling() {
+        ExceptionStatus status = configure(Map.of("detail", "message", "cache-size", "10", "full-trace-sampling", "3"));
+        Exception ex = failure("Timeout", "Connection lost");
+        byte[] cached = status.serialize(ex);
+        assertThat(traceSize(parse(cached)), is(0));
+        assertThat(traceSize(status.build(ex)), is(0));
+        byte[] sampled = status.serialize(ex);
+        assertThat(sampled, not(sameInstance(cached)));
+        assertThat(traceSize(parse(sampled)), is(ex.getStackTrace().length));
+        assertThat(status.serialize(ex), sameInstance(cached));
+        assertThat(traceSize(status.build(ex)), is(0));
+        assertThat(traceSize(status.build(ex)), is(ex.getStackTrace().length));
+    }
+
+    // Class and message of every exception in the chain.
+    private static JsonArray verifyStatus(JsonObject response, Throwable t) {
+        assertThat(response.getString("status"), is("exception"));
+        JsonArray stacktrace = response.getJsonArray("stacktrace");
+        Throwable current = t;
+        for (int i = 0; i < stacktrace.size(); i++) {
+            JsonObject trace = stacktrace.getJsonObject(i);
+            assertThat(trace.getString("class"), is(current.getClass().getName()));
+            assertThat(trace.getString("message"),
+                       is(current.getMessage() != null ? current.getMessage() : current.getClass().getName()));
+            current = current.getCause();
+        }
+        assertThat(current == null, is(true));
+        return stacktrace;
+    }
+
+    private static int traceSize(JsonObject response) {
+        return response.getJsonArray("stacktrace").getJsonObject(0).getJsonArray("trace").size();
+    }
+
+    private static Exception failure(String message, String cause) {
+        return new RuntimeException(message, new IllegalStateException(cause));
+    }
+
+    private static Exception otherFailure(String message, String cause) {
+        return new RuntimeException(message, new IllegalStateException(cause));
+    }
+
+    private static JsonObject parse(byte[] response) {
+        return Json.createReader(new StringReader(new String(response, StandardCharsets.UTF_8))).readObject();
+    }
+
+    private static ExceptionStatus configure(Map<String, String> properties) {
+        ExceptionStatus.configure(Config.create(ConfigSources.create(properties)));
+        return ExceptionStatus.instance();
+    }
+
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import io.helidon.config.Config;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+/**
+ * Loader of initial dataset executed by {@code /LifeCycle/init}.
+ * <p>Rows are read from configured source by single loader thread and written by {@link WindowedWriter},
+ * so at most {@code window} inserts are in flight and source is read no faster than rows are written.
+ * Memory use is bounded by the window and single line of the file source. Sources:
+ * <ul>
+ *     <li>{@code fixture} - bundled {@link Pokemon#POKEMNONS} rows</li>
+ *     <li>{@code generator} - synthetic rows of {@link PokemonGenerator} configured by {@code generator} node</li>
+ *     <li>{@code file} - local file streamed line by line, CSV rows {@code id,name,type} or NDJSON objects
+ *         with {@code id}, {@code name} and {@code type}, format is taken from {@code format} or file extension</li>
+ * </ul>
+ * Progress with rows per second is logged every {@code report-interval} milliseconds.
+ * <p>Before the dataset is seeded again, table is cleared by {@code clear} method: {@code truncate}
+ * executes {@code truncate} statement, {@code delete} deletes rows returned by {@code scan} statement
+ * with {@code delete} statement. Deletes are faster for small datasets, because truncate has to flush
+ * the table on all nodes. {@link #checksum()} identifies the source, so current dataset is not seeded again.
+ */
+public final class BulkLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkLoader.class.getName());
+
+    // Default maximum number of inserts in flight
+    private static final int DEFAULT_WINDOW = 256;
+    // Default progress report interval in milliseconds
+    private static final long DEFAULT_REPORT_INTERVAL = 5000;
+    // Rows written between progress report time checks
+    private static final int REPORT_CHECK_ROWS = 1024;
+    // Changes checksums of all sources when rows mapping changes
+    private static final String CHECKSUM_VERSION = "1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final SourceType type;
+    private final Path file;
+    private final Format format;
+    private final PokemonGenerator generator;
+    private final boolean truncate;
+    private final int window;
+    private final long reportInterval;
+
+    private BulkLoader(final SourceType type,
+                       final Path file,
+                       final Format format,
+                       final PokemonGenerator generator,
+                       final boolean truncate,
+                       final int window,
+                       final long reportInterval) {
+        if (window < 1) {
+            throw new IllegalArgumentException(String.format("Loader window size %d is not positive.", window));
+        }
+        this.type = type;
+        this.file = file;
+        this.format = format;
+        this.generator = generator;
+        this.truncate = truncate;
+        this.window = window;
+        this.reportInterval = TimeUnit.MILLISECONDS.toNanos(reportInterval);
+    }
+
+    /**
+     * Creates bulk loader from {@code app.init} configuration node.
+     *
+     * @param config loader configuration
+     * @return bulk loader
+     */
+    public static BulkLoader create(final Config config) {
+        final SourceType type = config.get("source").asString().map(SourceType::parse).orElse(SourceType.FIXTURE);
+        final Path file = config.get("file").asString().map(Path::of).orElse(null);
+        if (type == SourceType.FILE && file == null) {
+            throw new IllegalArgumentException("Dataset file source requires file name.");
+        }
+        final Format format = config.get("format").asString().map(Format::parse)
+                .orElseGet(() -> file != null ? Format.of(file) : Format.CSV);
+        final PokemonGenerator generator = type == SourceType.GENERATOR
+                ? PokemonGenerator.create(config.get("generator"))
+                : null;
+        final boolean truncate = config.get("clear").asString().map(BulkLoader::parseClear).orElse(true);
+        final int window = config.get("window").asInt().orElse(DEFAULT_WINDOW);
+        final long reportInterval = config.get("report-interval").asLong().orElse(DEFAULT_REPORT_INTERVAL);
+        LOGGER.info(() -> String.format("Initial dataset source: %s, window: %d, clear: %s",
+                                        type == SourceType.FILE ? String.format("%s (%s)", file, format) : type,
+                                        window,
+                                        truncate ? "truncate" : "delete"));
+        return new BulkLoader(type, file, format, generator, truncate, window, reportInterval);
+    }
+
+    /**
+     * Checksum of the dataset source. Fixture is identified by its rows, generator by its settings
+     * and file by its path, size and modification time.
+     *
+     * @return hexadecimal checksum
+     */
+    public String checksum() {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 digest is not available", ex);
+        }
+        final StringBuilder sb = new StringBuilder(CHECKSUM_VERSION).append('|').append(type).append('|');
+        switch (type) {
+            case FILE:
+                try {
+                    sb.append(file.toAbsolutePath()).append('|').append(format)
+                            .append('|').append(Files.size(file))
+                            .append('|').append(Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                break;
+            case GENERATOR:
+                sb.append(generator);
+                break;
+            case FIXTURE:
+            default:
+                Pokemon.POKEMNONS.values().stream()
+                        .sorted(Comparator.comparingInt(Pokemon::getId))
+                        .forEach(pokemon -> sb.append(pokemon.getId()).append(',')
+                                .append(pokemon.getName()).append(',')
+                                .append(pokemon.getType()).append('|'));
+        }
+        final byte[] hash = digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX[(hash[i] >> 4) & 0x0F];
+            hex[2 * i + 1] = HEX[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Remove all rows of the dataset table.
+     *
+     * @param statements configured statements registry with {@code truncate}, {@code scan}
+     *                   and {@code delete} statements
+     * @return stage completed when table is empty
+     */
+    public CompletionStage<Void> clear(final StatementRegistry statements) {
+        if (truncate) {
+            return statements.session().executeAsync(statements.statement("truncate")).thenAccept(rs -> { });
+        }
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> delete(statements, result), "bulk-loader");
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    /**
+     * Load the dataset.
+     *
+     * @param insert insert statement with {@code id}, {@code name} and {@code type} bind variables
+     * @return summary of written rows, completed when all inserts are finished
+     */
+    public CompletionStage<WindowedWriter.Summary> load(final StatementRegistry.Handle insert) {
+        final CompletableFuture<WindowedWriter.Summary> result = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> run(insert, result), "bulk-loader");
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    // Runs on loader thread, waits for writer permit before reading next row.
+    private void run(final StatementRegistry.Handle insert, final CompletableFuture<WindowedWriter.Summary> result) {
+        final WindowedWriter writer = new WindowedWriter(insert, window);
+        long nextReport = System.nanoTime() + reportInterval;
+        Throwable failure = null;
+        try (Source source = source()) {
+            long rows = 0;
+            while (true) {
+                final Object[] row;
+                try {
+                    row = source.next();
+                } catch (IllegalArgumentException ex) {
+                    writer.reject(ex.getMessage());
+                    continue;
+                }
+                if (row == null) {
+                    break;
+                }
+                writer.write(row).toCompletableFuture().join();
+                if (++rows % REPORT_CHECK_ROWS == 0 && System.nanoTime() >= nextReport) {
+                    nextReport += reportInterval;
+                    final WindowedWriter.Summary progress = writer.summary();
+                    LOGGER.info(() -> String.format("Loading initial dataset: %s", progress));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            failure = ex;
+        }
+        final Throwable readFailure = failure;
+        writer.finish().whenComplete((summary, t) -> {
+            if (readFailure != null) {
+                LOGGER.log(Level.WARNING, readFailure, () -> String.format("Could not read initial dataset: %s", summary));
+                result.completeExceptionally(new RemoteTestException(
+                        String.format("Could not read initial dataset: %s", readFailure.getMessage())));
+            } else {
+                LOGGER.info(() -> String.format("Initial dataset loaded: %s", summary));
+                result.complete(summary);
+            }
+        });
+    }
+
+    // Runs on loader thread, deletes rows page by page with bounded number of deletes in flight.
+    private void delete(final StatementRegistry statements, final CompletableFuture<Void> result) {
+        final WindowedWriter writer = new WindowedWriter(statements.handle("delete"), window);
+        Throwable failure = null;
+        try {
+            AsyncResultSet rs = statements.handle("scan").executeAsync().toCompletableFuture().join();
+            while (true) {
+                for (Row row : rs.currentPage()) {
+                    writer.write(row.getInt("id")).toCompletableFuture().join();
+                }
+                if (!rs.hasMorePages()) {
+                    break;
+                }
+                rs = rs.fetchNextPage().toCompletableFuture().join();
+            }
+        } catch (RuntimeException ex) {
+            failure = CassandraService.unwrap(ex);
+        }
+        final Throwable scanFailure = failure;
+        writer.finish().whenComplete((summary, t) -> {
+            LOGGER.fine(() -> String.format("Dataset rows deleted: %s", summary));
+            if (scanFailure != null) {
+                result.completeExceptionally(scanFailure);
+            } else if (summary.failed() > 0) {
+                result.completeExceptionally(new RemoteTestException(
+                        String.format("Could not delete %d rows of dataset.", summary.failed())));
+            } else {
+                result.complete(null);
+            }
+        });
+    }
+
+    private Source source() throws IOException {
+        switch (type) {
+            case FILE:
+                return new FileSource(Files.newBufferedReader(file, StandardCharsets.UTF_8), format);
+            case GENERATOR:
+                return generator.source();
+            case FIXTURE:
+            default:
+                return new FixtureSource();
+        }
+    }
+
+    /**
+     * Rows of the dataset, read by single loader thread.
+     */
+    interface Source extends Closeable {
+
+        /**
+         * Values of next row.
+         *
+         * @return {@code id}, {@code name} and {@code type} values or {@code null} at the end of the dataset
+         * @throws IOException when dataset could not be read
+         * @throws IllegalArgumentException when row is malformed, reading continues with next row
+         */
+        Object[] next() throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+
+    }
+
+    // Table is cleared by truncate (true) or by deletes (false).
+    private static boolean parseClear(final String value) {
+        switch (value.trim().toLowerCase()) {
+            case "truncate":
+                return true;
+            case "delete":
+                return false;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown dataset clear method %s.", value));
+        }
+    }
+
+    private enum SourceType {
+        FIXTURE,
+        FILE,
+        GENERATOR;
+
+        private static SourceType parse(final String value) {
+            return SourceType.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private enum Format {
+        CSV,
+        NDJSON;
+
+        private static Format parse(final String value) {
+            return Format.valueOf(value.trim().toUpperCase());
+        }
+
+        private static Format of(final Path file) {
+            final String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json") ? NDJSON : CSV;
+        }
+    }
+
+    // Bundled pokemons.
+    private static final class FixtureSource implements Source {
+
+        private final Iterator<Pokemon> pokemons = Pokemon.POKEMNONS.values().iterator();
+
+        @Override
+        public Object[] next() {
+            if (!pokemons.hasNext()) {
+                return null;
+            }
+            final Pokemon pokemon = pokemons.next();
+            return new Object[] {pokemon.getId(), pokemon.getName(), pokemon.getType()};
+        }
+
+    }
+
+    // Local file streamed line by line, blank lines and CSV header are skipped.
+    private static final class FileSource implements Source {
+
+        private final BufferedReader reader;
+        private final Format format;
+        private long lineNumber;
+
+        private FileSource(final BufferedReader reader, final Format format) {
+            this.reader = reader;
+            this.format = format;
+            this.lineNumber = 0;
+        }
+
+        @Override
+        public Object[] next() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                lineNumber++;
+            } while (line.isBlank() || (lineNumber == 1 && format == Format.CSV && line.startsWith("id,")));
+            try {
+                return format == Format.CSV ? csv(line) : ndjson(line);
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException(String.format("Line %d: %s", lineNumber, ex.getMessage()), ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        private static Object[] csv(final String line) {
+            final String[] fields = line.split(",", 3);
+            if (fields.length != 3) {
+                throw new IllegalArgumentException(String.format("Expected 3 fields, found %d", fields.length));
+            }
+            return new Object[] {Integer.parseInt(fields[0].trim()), fields[1].trim(), fields[2].trim()};
+        }
+
+        private static Object[] ndjson(final String line) {
+            try (JsonReader jsonReader = Json.createReader(new StringReader(line))) {
+                final JsonObject row = jsonReader.readObject();
+                return NdjsonSubscriber.pokemonValues(row);
+            } catch (JsonException | ClassCastException ex) {
+                throw new IllegalArgumentException(ex.getMessage(), ex);
+            }
+        }
+
+    }
+
+}
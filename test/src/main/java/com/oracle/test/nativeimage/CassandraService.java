@@ -15,115 +15,231 @@
  */
 package com.oracle.test.nativeimage;
 
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 
 import javax.json.Json;
-import javax.json.JsonObjectBuilder;
+import javax.json.JsonArray;
 import javax.json.JsonValue;
 
+import io.helidon.common.http.Http;
+import io.helidon.config.Config;
+import io.helidon.tests.integration.tools.service.AppResponseWriter;
 import io.helidon.tests.integration.tools.service.RemoteTestException;
 import io.helidon.webserver.Routing;
 import io.helidon.webserver.ServerRequest;
 import io.helidon.webserver.ServerResponse;
 import io.helidon.webserver.Service;
 
-import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.ResultSet;
-import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 
-import static io.helidon.tests.integration.tools.service.AppResponse.exceptionStatus;
-import static io.helidon.tests.integration.tools.service.AppResponse.okStatus;
+import static io.helidon.tests.integration.tools.service.AppResponseWriter.sendOk;
 
-// PERF: Cassandra API is blocking so it's direct usage in Service request handlers
-//       is not correct. But it will work for the purpose of simple jUnit testing.
 /**
  * Cassandra database web service.
+ * <p>Request handlers are built on {@code CqlSession.executeAsync}. In {@link HandlerMode#ASYNC} mode
+ * handler returns as soon as the statement is sent and response is completed from driver thread,
+ * so web server event loop thread is never blocked. Thread running the handlers is selected
+ * by {@link HandlerExecutor}.
+ * <p>{@code POST /ingest} accepts newline delimited JSON rows and writes them as they arrive
+ * with bounded number of inserts in flight. Ingest is always asynchronous, because request content
+ * is delivered by the same event loop thread which would be blocked by {@link HandlerMode#BLOCKING}.
+ * Malformed rows are skipped and reported in the summary, which is then sent with status 400.
+ * <p>Single row reads ({@code select}, {@code verify}) go through {@link NearCache}, which is invalidated
+ * by this service's writes. Request with {@code X-Cache-Bypass: true} header reads the row from database.
+ * Cache misses and pings are executed through {@link ReadCoalescer}, so concurrent identical reads
+ * share single query. Inserts and updates may be buffered and merged per row by {@link WriteBuffer}.
+ * <p>Rows are written as JSON by {@link RowEncoder} of their statement and sent inside pre-encoded response
+ * envelope, near cache holds already encoded rows.
+ * <p>All endpoints record request and error rates and latencies by {@link EndpointMetrics}, time waiting
+ * on database and encoding is marked on request timing where those phases can be told apart.
  */
 public class CassandraService implements Service {
 
-    private final CqlSession session;
-    private final Map<String,String> statements;
+    // Default maximum number of ingest inserts in flight
+    private static final int DEFAULT_INGEST_WINDOW = 64;
+    // Default maximum length of single ingest line in bytes
+    private static final int DEFAULT_INGEST_MAX_LINE = 64 * 1024;
+    // Default scan page settings
+    private static final int DEFAULT_SCAN_PAGE_SIZE = 100;
+    private static final int DEFAULT_SCAN_MIN_PAGE_SIZE = 10;
+    private static final int DEFAULT_SCAN_MAX_PAGE_SIZE = 5000;
+    private static final int DEFAULT_SCAN_CHUNK_BYTES = 64 * 1024;
+    // Default maximum number of keys read by single selectMany request
+    private static final int DEFAULT_SELECT_MANY_MAX_IDS = 1000;
+    // Request header to bypass near cache lookup
+    private static final String CACHE_BYPASS_HEADER = "X-Cache-Bypass";
+    // Encoded missing row, compared by identity
+    private static final byte[] NO_ROW = "null".getBytes(StandardCharsets.US_ASCII);
+
+    private final HandlerMode mode;
+    private final HandlerExecutor executor;
+    private final WriteBuffer writeBuffer;
+    private final StatementRegistry.Handle pingStmt;
+    private final StatementRegistry.Handle selectStmt;
+    private final StatementRegistry.Handle insertStmt;
+    private final StatementRegistry.Handle updateStmt;
+    private final StatementRegistry.Handle deleteStmt;
+    private final StatementRegistry.Handle scanStmt;
+    private final StatementRegistry.Handle scanRangeStmt;
+    private final int ingestWindow;
+    private final int ingestMaxLine;
+    private final PagedScan.Settings scanSettings;
+    private final MultiGet multiGet;
+    private final int selectManyMaxIds;
+    private final NearCache<Integer, byte[]> cache;
+    private final ReadCoalescer coalescer;
+    private final EndpointMetrics endpoints;
+    private final Dataset dataset;
 
     /**
      * Creates an instance of common web service code for testing application.
      *
-     * @param session Cassandra database session
-     * @param statements configured statements
+     * @param statements configured statements registry
+     * @param mode request handlers mode
+     * @param executor request handlers execution strategy
+     * @param writeBuffer write-behind buffer of inserts and updates
+     * @param endpoints endpoint metrics
+     * @param dataset seeded dataset state, marked as modified by writes
+     * @param config application configuration ({@code app} node)
      */
-    public CassandraService(final CqlSession session, final Map<String,String> statements) {
-        this.session = session;
-        this.statements = statements;
+    public CassandraService(final StatementRegistry statements,
+                            final HandlerMode mode,
+                            final HandlerExecutor executor,
+                            final WriteBuffer writeBuffer,
+                            final EndpointMetrics endpoints,
+                            final Dataset dataset,
+                            final Config config) {
+        this.mode = mode;
+        this.executor = executor;
+        this.writeBuffer = writeBuffer;
+        this.endpoints = endpoints;
+        this.dataset = dataset;
+        this.ingestWindow = config.get("ingest.window").asInt().orElse(DEFAULT_INGEST_WINDOW);
+        this.ingestMaxLine = config.get("ingest.max-line-length").asInt().orElse(DEFAULT_INGEST_MAX_LINE);
+        this.scanSettings = new PagedScan.Settings(
+                config.get("scan.page-size").asInt().orElse(DEFAULT_SCAN_PAGE_SIZE),
+                config.get("scan.min-page-size").asInt().orElse(DEFAULT_SCAN_MIN_PAGE_SIZE),
+                config.get("scan.max-page-size").asInt().orElse(DEFAULT_SCAN_MAX_PAGE_SIZE),
+                config.get("scan.chunk-bytes").asInt().orElse(DEFAULT_SCAN_CHUNK_BYTES));
+        this.pingStmt = statements.handle("ping");
+        this.selectStmt = statements.handle("select");
+        this.insertStmt = statements.handle("insert");
+        this.updateStmt = statements.handle("update");
+        this.deleteStmt = statements.handle("delete");
+        this.scanStmt = statements.handle("scan");
+        this.scanRangeStmt = statements.handle("scan-range");
+        this.multiGet = new MultiGet(selectStmt);
+        this.selectManyMaxIds = config.get("select-many.max-ids").asInt().orElse(DEFAULT_SELECT_MANY_MAX_IDS);
+        this.cache = NearCache.create(config.get("cache"), value -> value.length);
+        this.coalescer = ReadCoalescer.create(config.get("coalescing"));
     }
 
     @Override
     public void update(Routing.Rules rules) {
         rules
-                .get("/ping", this::ping)
-                .get("/select", this::select)
-                .get("/verify", this::verify)
-                .get("/insert", this::insert)
-                .get("/update", this::update)
-                .get("/delete", this::delete);
+                .get("/ping", endpoints.timed("cassandra.ping", executor.wrap(this::ping)))
+                .get("/select", endpoints.timed("cassandra.select", executor.wrap(this::select)))
+                .get("/selectMany", endpoints.timed("cassandra.selectMany", executor.wrap(this::selectMany)))
+                .post("/selectMany", endpoints.timed("cassandra.selectManyPost", executor.wrap(this::selectManyPost)))
+                .get("/verify", endpoints.timed("cassandra.verify", executor.wrap(this::verify)))
+                .get("/insert", endpoints.timed("cassandra.insert", executor.wrap(this::insert)))
+                .get("/update", endpoints.timed("cassandra.update", executor.wrap(this::update)))
+                .get("/delete", endpoints.timed("cassandra.delete", executor.wrap(this::delete)))
+                .get("/scan", endpoints.timed("cassandra.scan", executor.wrap(this::scan)))
+                .post("/ingest", endpoints.timed("cassandra.ingest", executor.wrap(this::ingest)));
     }
 
     // Returns Cassandra database version.
     private void ping(final ServerRequest request, final ServerResponse response) {
-        ResultSet rs = session.execute(statements.get("ping"));
-        Row row = rs.one();
-        if (row != null) {
-            JsonValue hw = Json.createValue(row.getString("release_version"));
-            response.send(okStatus(hw));
-        } else {
-            response.send(exceptionStatus(
-                    new RemoteTestException("No Cassandra version was returned")));
-        }
+        final EndpointMetrics.Timing timing = EndpointMetrics.timing(request);
+        send(request, response, "Test ping failed", mode.apply(coalescer.one(pingStmt))
+                .thenApply(row -> {
+                    timing.cassandra();
+                    if (row == null) {
+                        throw new RemoteTestException("No Cassandra version was returned");
+                    }
+                    return Json.createValue(row.getString("release_version"));
+                }));
     }
 
     // Select row from database table
     private void select(final ServerRequest request, final ServerResponse response) {
         try {
             int id = Integer.parseInt(param(request, "id"));
-            ResultSet rs = session.execute(session
-                    .prepare(statements.get("select"))
-                    .bind(id));
-            Row row = rs.one();
-            if (row == null) {
-                response.send(exceptionStatus(
-                        new RemoteTestException("Test select failed: No rows returned.")));
-            } else {
-                JsonObjectBuilder job = Json.createObjectBuilder();
-                job.add("id", row.getInt("id"));
-                job.add("name", row.getString("name"));
-                job.add("type", row.getString("type"));
-                response.send(okStatus(job.build()));
+            sendJson(request, response, "Test select failed", cachedSelect(request, id)
+                    .thenApply(value -> {
+                        if (value == NO_ROW) {
+                            throw new RemoteTestException("No rows returned.");
+                        }
+                        return value;
+                    }));
+        } catch (Throwable t) {
+            sendException(request, response,
+                    new RemoteTestException(String.format("Test select failed: %s", t.getMessage())));
+        }
+    }
+
+    // Select rows with comma separated ids from database table.
+    private void selectMany(final ServerRequest request, final ServerResponse response) {
+        try {
+            final List<Integer> ids = new ArrayList<>();
+            for (String value : request.queryParams().all("ids")) {
+                for (String id : value.split(",")) {
+                    if (!id.isBlank()) {
+                        ids.add(Integer.parseInt(id.strip()));
+                    }
+                }
             }
+            selectMany(ids, request, response);
         } catch (Throwable t) {
-            response.send(exceptionStatus(
-                    new RemoteTestException(String.format("Test select failed: %s", t.getMessage()))));
+            sendException(request, response,
+                    new RemoteTestException(String.format("Test selectMany failed: %s", t.getMessage())));
         }
     }
 
+    // Select rows with ids from JSON array in request content from database table.
+    private void selectManyPost(final ServerRequest request, final ServerResponse response) {
+        request.content()
+                .as(JsonArray.class)
+                .thenAccept(array -> {
+                    final List<Integer> ids = new ArrayList<>(array.size());
+                    for (int i = 0; i < array.size(); i++) {
+                        ids.add(array.getInt(i));
+                    }
+                    selectMany(ids, request, response);
+                })
+                .exceptionally(t -> {
+                    sendException(request, response, new RemoteTestException(
+                            String.format("Test selectMany failed: %s", unwrap(t).getMessage())));
+                    return null;
+                });
+    }
+
+    private void selectMany(final List<Integer> ids, final ServerRequest request, final ServerResponse response) {
+        if (ids.isEmpty()) {
+            throw new RemoteTestException("No ids to select.");
+        }
+        if (ids.size() > selectManyMaxIds) {
+            throw new RemoteTestException(
+                    String.format("Too many ids to select: %d, limit is %d.", ids.size(), selectManyMaxIds));
+        }
+        sendJson(request, response, "Test selectMany failed", mode.apply(multiGet.select(ids, EndpointMetrics.timing(request))));
+    }
+
     // Verify row in database table (same as select but empty row is valid response).
     private void verify(final ServerRequest request, final ServerResponse response) {
         try {
             int id = Integer.parseInt(param(request, "id"));
-            ResultSet rs = session.execute(session
-                    .prepare(statements.get("select"))
-                    .bind(id));
-            Row row = rs.one();
-            if (row == null) {
-                response.send(okStatus(JsonValue.NULL));
-            } else {
-                JsonObjectBuilder job = Json.createObjectBuilder();
-                job.add("id", row.getInt("id"));
-                job.add("name", row.getString("name"));
-                job.add("type", row.getString("type"));
-                response.send(okStatus(job.build()));
-            }
+            sendJson(request, response, "Pokemon verification failed", cachedSelect(request, id));
         } catch (Throwable t) {
-            response.send(exceptionStatus(
-                    new RemoteTestException(String.format("Pokemon verification failed: %s", t.getMessage()))));
+            sendException(request, response,
+                    new RemoteTestException(String.format("Pokemon verification failed: %s", t.getMessage())));
         }
     }
 
@@ -133,13 +249,21 @@ public class CassandraService implements Service {
             int id = Integer.parseInt(param(request, "id"));
             String name = param(request, "name");
             String type = param(request, "type");
-            session.execute(session
-                    .prepare(statements.get("insert"))
-                    .bind(id, name, type));
-            response.send(okStatus(JsonValue.NULL));
+            dataset.modified();
+            if (writeBuffer.enabled()) {
+                send(request, response, "Test insert failed", buffered(request, id, writeBuffer.insert(id, name, type)));
+                return;
+            }
+            final EndpointMetrics.Timing timing = EndpointMetrics.timing(request);
+            send(request, response, "Test insert failed", execute(insertStmt, id, name, type)
+                    .whenComplete((rs, t) -> {
+                        timing.cassandra();
+                        invalidate(id);
+                    })
+                    .thenApply(rs -> JsonValue.NULL));
         } catch (Throwable t) {
-            response.send(exceptionStatus(
-                    new RemoteTestException(String.format("Test insert failed: %s", t.getMessage()))));
+            sendException(request, response,
+                    new RemoteTestException(String.format("Test insert failed: %s", t.getMessage())));
         }
     }
 
@@ -148,13 +272,21 @@ public class CassandraService implements Service {
         try {
             int id = Integer.parseInt(param(request, "id"));
             String name = param(request, "name");
-            session.execute(session
-                    .prepare(statements.get("update"))
-                    .bind(name, id));
-            response.send(okStatus(JsonValue.NULL));
+            dataset.modified();
+            if (writeBuffer.enabled()) {
+                send(request, response, "Test update failed", buffered(request, id, writeBuffer.update(id, name)));
+                return;
+            }
+            final EndpointMetrics.Timing timing = EndpointMetrics.timing(request);
+            send(request, response, "Test update failed", execute(updateStmt, name, id)
+                    .whenComplete((rs, t) -> {
+                        timing.cassandra();
+                        invalidate(id);
+                    })
+                    .thenApply(rs -> JsonValue.NULL));
         } catch (Throwable t) {
-            response.send(exceptionStatus(
-                    new RemoteTestException(String.format("Test update failed: %s", t.getMessage()))));
+            sendException(request, response,
+                    new RemoteTestException(String.format("Test update failed: %s", t.getMessage())));
         }
     }
 
@@ -162,14 +294,198 @@ public class CassandraService implements Service {
     private void delete(final ServerRequest request, final ServerResponse response) {
         try {
             int id = Integer.parseInt(param(request, "id"));
-            session.execute(session
-                    .prepare(statements.get("delete"))
-                    .bind(id));
-            response.send(okStatus(JsonValue.NULL));
+            dataset.modified();
+            final EndpointMetrics.Timing timing = EndpointMetrics.timing(request);
+            // Pending buffered write of the row must not be flushed after the delete.
+            send(request, response, "Test delete failed", mode.apply(writeBuffer.discard(id)
+                    .thenCompose(v -> deleteStmt.executeAsync(id)))
+                    .whenComplete((rs, t) -> {
+                        timing.cassandra();
+                        invalidate(id);
+                    })
+                    .thenApply(rs -> JsonValue.NULL));
         } catch (Throwable t) {
-            response.send(exceptionStatus(
-                    new RemoteTestException(String.format("Test delete failed: %s", t.getMessage()))));
+            sendException(request, response,
+                    new RemoteTestException(String.format("Test delete failed: %s", t.getMessage())));
+        }
+    }
+
+    // Stream all rows of database table, or rows in token range (from, to], as paged JSON content.
+    // Scan stops after limit rows and can be resumed from returned cursor with the same parameters.
+    private void scan(final ServerRequest request, final ServerResponse response) {
+        try {
+            final Optional<String> from = request.queryParams().first("from");
+            final Optional<String> to = request.queryParams().first("to");
+            final long limit = request.queryParams().first("limit").map(Long::parseLong).orElse(Long.MAX_VALUE);
+            // Driver uses default page size for page size below 1, so the limit would not be applied.
+            if (limit < 1) {
+                throw new RemoteTestException(String.format("Invalid scan limit %d.", limit));
+            }
+            final PagedScan scan;
+            if (from.isPresent() || to.isPresent()) {
+                scan = new PagedScan(
+                        scanRangeStmt,
+                        new Object[] {Long.parseLong(param(request, "from")), Long.parseLong(param(request, "to"))},
+                        limit,
+                        scanSettings);
+            } else {
+                scan = new PagedScan(scanStmt, new Object[0], limit, scanSettings);
+            }
+            final EndpointMetrics.Timing timing = EndpointMetrics.timing(request);
+            scan.start(request.queryParams().first("cursor").orElse(null), mode)
+                    .whenComplete((content, t) -> {
+                        timing.cassandra();
+                        if (t == null) {
+                            sendOk(response, content);
+                        } else {
+                            sendException(request, response, new RemoteTestException(
+                                    String.format("Test scan failed: %s", unwrap(t).getMessage())));
+                        }
+                    });
+        } catch (Throwable t) {
+            sendException(request, response,
+                    new RemoteTestException(String.format("Test scan failed: %s", t.getMessage())));
+        }
+    }
+
+    // Insert rows streamed as newline delimited JSON objects with id, name and type.
+    private void ingest(final ServerRequest request, final ServerResponse response) {
+        final NdjsonSubscriber subscriber = new NdjsonSubscriber(
+                new WindowedWriter(insertStmt, ingestWindow),
+                NdjsonSubscriber::pokemonValues,
+                ingestMaxLine);
+        // Rows are not invalidated one by one, cache is cleared before and after the ingest.
+        dataset.modified();
+        invalidateAll();
+        request.content().subscribe(subscriber);
+        send(request, response, "Test ingest failed", subscriber.result()
+                .whenComplete((summary, t) -> invalidateAll())
+                .thenApply(summary -> {
+                    // Valid rows were written, rejected rows are reported in the summary.
+                    if (summary.failed() > 0) {
+                        response.status(Http.Status.BAD_REQUEST_400);
+                    }
+                    return summary.toJson();
+                }));
+    }
+
+    // Select encoded row through near cache, missing row is returned as NO_ROW.
+    // Fresh row read with cache bypass header replaces cached one.
+    private CompletionStage<byte[]> cachedSelect(final ServerRequest request, final int id) {
+        final boolean bypass = request.headers().first(CACHE_BYPASS_HEADER).map(Boolean::parseBoolean).orElse(false);
+        if (!bypass) {
+            final byte[] cached = cache.get(id);
+            if (cached != null) {
+                ConcurrencyLimiter.unsampled(request);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+        final EndpointMetrics.Timing timing = EndpointMetrics.timing(request);
+        final long stamp = cache.stamp();
+        return mode.apply(coalescer.one(selectStmt, id))
+                .thenApply(row -> {
+                    timing.cassandra();
+                    final byte[] value = row == null ? NO_ROW : selectStmt.encoder(row).encode(row);
+                    timing.encoded();
+                    cache.put(id, value, stamp);
+                    return value;
+                });
+    }
+
+    // Buffered write is acknowledged according to buffer mode, row is invalidated when write was flushed.
+    private CompletionStage<JsonValue> buffered(final ServerRequest request, final int id, final CompletionStage<Void> flush) {
+        flush.whenComplete((v, t) -> invalidate(id));
+        final CompletionStage<Void> ack = writeBuffer.ack(flush);
+        // Write acknowledged before it was flushed did not wait on database.
+        if (ack != flush) {
+            ConcurrencyLimiter.unsampled(request);
         }
+        return mode.apply(ack).thenApply(v -> JsonValue.NULL);
+    }
+
+    // Row with id was modified.
+    private void invalidate(final int id) {
+        cache.invalidate(id);
+        coalescer.invalidate(selectStmt, id);
+    }
+
+    /*
+     * Drop all cached rows and shared reads, e.g. when dataset was reset.
+     */
+    void invalidateAll() {
+        cache.invalidateAll();
+        coalescer.invalidateAll();
+    }
+
+    // Execute statement with handler mode applied.
+    private CompletionStage<AsyncResultSet> execute(final StatementRegistry.Handle stmt, final Object... values) {
+        return mode.apply(stmt.executeAsync(values));
+    }
+
+    /*
+     * Send response when asynchronous request processing is completed.
+     *
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param failure error message prefix used when processing failed
+     * @param data response data
+     */
+    static void send(final ServerRequest request,
+                     final ServerResponse response,
+                     final String failure,
+                     final CompletionStage<? extends JsonValue> data) {
+        data.whenComplete((value, t) -> {
+            if (t == null) {
+                sendOk(response, value);
+            } else {
+                sendException(request, response,
+                        new RemoteTestException(String.format("%s: %s", failure, unwrap(t).getMessage())));
+            }
+        });
+    }
+
+    /*
+     * Send response with already encoded JSON data when asynchronous request processing is completed.
+     *
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param failure error message prefix used when processing failed
+     * @param data UTF-8 encoded JSON response data
+     */
+    static void sendJson(final ServerRequest request,
+                         final ServerResponse response,
+                         final String failure,
+                         final CompletionStage<byte[]> data) {
+        data.whenComplete((value, t) -> {
+            if (t == null) {
+                sendOk(response, value);
+            } else {
+                sendException(request, response,
+                        new RemoteTestException(String.format("%s: %s", failure, unwrap(t).getMessage())));
+            }
+        });
+    }
+
+    /*
+     * Send response with exception status and count it as failed request of the endpoint.
+     *
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param t {@link Throwable} to be stored in JSON response
+     */
+    static void sendException(final ServerRequest request, final ServerResponse response, final Throwable t) {
+        EndpointMetrics.timing(request).failed();
+        AppResponseWriter.sendException(response, t);
+    }
+
+    /*
+     * Unwrap cause of asynchronous processing failure.
+     *
+     * @param t asynchronous processing failure
+     * @return cause of the failure
+     */
+    static Throwable unwrap(final Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
     }
 
     /*
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import io.helidon.common.http.Http;
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+import io.helidon.webserver.Service;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+
+import static io.helidon.tests.integration.tools.service.AppResponseWriter.sendException;
+
+/**
+ * Adaptive concurrency limiter of database requests.
+ * <p>Limit of requests in flight is adjusted using gradient of request latency: long term
+ * latency average is compared with current latency and limit shrinks when current latency
+ * is inflated by queueing in front of Cassandra. Requests exceeding the limit are rejected
+ * immediately with {@code 503} status and {@code Retry-After} header.
+ * <p>Measured latency covers whole request processing, which is dominated by database query.
+ * Only single row endpoints listed in {@code paths} are limited, latency of streaming responses
+ * does not reflect database latency. Requests answered without waiting on database, e.g. near cache hits,
+ * are excluded from latency sampling by {@link #unsampled(ServerRequest)}.
+ * Limiter must be registered before the limited service in the same routing path.
+ */
+public class ConcurrencyLimiter implements Service {
+
+    private static final Logger LOGGER = Logger.getLogger(ConcurrencyLimiter.class.getName());
+
+    // Long term latency average window size (in samples)
+    private static final double LONG_WINDOW = 600;
+    // Current latency average window size (in samples)
+    private static final double SHORT_WINDOW = 10;
+    // Single row endpoints of the limited service
+    private static final List<String> DEFAULT_PATHS = List.of("/ping", "/select", "/verify", "/insert", "/update", "/delete");
+
+    private final List<String> paths;
+    private final AtomicInteger inFlight;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double tolerance;
+    private final Counter rejected;
+    private final Counter limitChanges;
+    // Current limit, guarded by this
+    private double limit;
+    // Latency averages in nanoseconds, guarded by this
+    private double longRtt;
+    private double shortRtt;
+    // Limit used for fast path check
+    private volatile int currentLimit;
+
+    private ConcurrencyLimiter(final List<String> paths,
+                               final int initialLimit,
+                               final int minLimit,
+                               final int maxLimit,
+                               final double smoothing,
+                               final double tolerance) {
+        this.paths = paths;
+        this.inFlight = new AtomicInteger();
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.tolerance = tolerance;
+        this.limit = initialLimit;
+        this.currentLimit = initialLimit;
+        this.longRtt = 0;
+        this.shortRtt = 0;
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.rejected = metrics.counter("limiter.rejected");
+        this.limitChanges = metrics.counter("limiter.limitChanges");
+        metrics.register(
+                Metadata.builder()
+                        .withName("limiter.limit")
+                        .withDescription("Current limit of database requests in flight")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Integer>) () -> currentLimit);
+        metrics.register(
+                Metadata.builder()
+                        .withName("limiter.inFlight")
+                        .withDescription("Database requests in flight")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Integer>) inFlight::get);
+    }
+
+    /**
+     * Creates concurrency limiter from {@code app.limiter} configuration node.
+     *
+     * @param config limiter configuration
+     * @return concurrency limiter or empty value when limiter is disabled
+     */
+    public static Optional<ConcurrencyLimiter> create(final Config config) {
+        if (!config.get("enabled").asBoolean().orElse(false)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ConcurrencyLimiter(
+                config.get("paths").asList(String.class).orElse(DEFAULT_PATHS),
+                config.get("initial-limit").asInt().orElse(20),
+                config.get("min-limit").asInt().orElse(4),
+                config.get("max-limit").asInt().orElse(1000),
+                config.get("smoothing").asDouble().orElse(0.2),
+                config.get("tolerance").asDouble().orElse(1.5)));
+    }
+
+    @Override
+    public void update(Routing.Rules rules) {
+        for (String path : paths) {
+            rules.any(path, this::limit);
+        }
+    }
+
+    /**
+     * Exclude request from latency sampling, e.g. when it was answered without waiting on database.
+     * Request still counts as request in flight.
+     *
+     * @param request HTTP request
+     */
+    public static void unsampled(final ServerRequest request) {
+        request.context().get(Sample.class).ifPresent(sample -> sample.skip = true);
+    }
+
+    // Pass request when limit allows it, otherwise reject it.
+    private void limit(final ServerRequest request, final ServerResponse response) {
+        final int current = inFlight.incrementAndGet();
+        if (current > currentLimit) {
+            inFlight.decrementAndGet();
+            rejected.inc();
+            final long retryAfter = retryAfter();
+            response.status(Http.Status.SERVICE_UNAVAILABLE_503);
+            response.headers().add(Http.Header.RETRY_AFTER, String.valueOf(retryAfter));
+            sendException(response, new RemoteTestException(String.format(
+                    "Too many concurrent requests (limit %d), retry after %d s.", currentLimit, retryAfter)));
+            return;
+        }
+        final Sample sample = new Sample();
+        request.context().register(sample);
+        final long start = System.nanoTime();
+        response.whenSent().whenComplete((res, t) -> {
+            inFlight.decrementAndGet();
+            if (!sample.skip) {
+                sample(System.nanoTime() - start, current);
+            }
+        });
+        request.next();
+    }
+
+    /*
+     * Current limit of requests in flight.
+     *
+     * @return current limit
+     */
+    int limit() {
+        return currentLimit;
+    }
+
+    /*
+     * Update limit using request latency sample.
+     *
+     * @param rtt request latency in nanoseconds
+     * @param inFlightAtStart number of requests in flight when this request started, including it
+     */
+    synchronized void sample(final long rtt, final int inFlightAtStart) {
+        if (longRtt == 0) {
+            longRtt = rtt;
+            shortRtt = rtt;
+            return;
+        }
+        shortRtt += (rtt - shortRtt) / SHORT_WINDOW;
+        longRtt += (rtt - longRtt) / LONG_WINDOW;
+        // Long term average drifts up under steady overload, let it recover faster.
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        // Limit is not adjusted while it is not used, latency does not reflect it.
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+        final double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        final double queueSize = Math.sqrt(limit);
+        final double newLimit = limit * gradient + queueSize;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + newLimit * smoothing));
+        final int rounded = (int) limit;
+        if (rounded != currentLimit) {
+            currentLimit = rounded;
+            limitChanges.inc();
+            LOGGER.finest(() -> String.format("Concurrency limit changed to %d", rounded));
+        }
+    }
+
+    // Suggested client retry delay in seconds.
+    private long retryAfter() {
+        final double rtt;
+        synchronized (this) {
+            rtt = longRtt;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds((long) rtt));
+    }
+
+    // Latency sampling state of single request.
+    private static final class Sample {
+
+        private volatile boolean skip;
+
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.datastax.oss.driver.api.core.cql.Row;
+
+/**
+ * State of the seeded test dataset stored in the database.
+ * <p>Meta table row of the dataset keeps checksum of the loaded source and {@code dirty} flag. Dataset
+ * is current when the checksum matches and no row was modified since it was loaded, so it does not have
+ * to be cleared and seeded again. First write through this server process, and first write after
+ * the dataset was found current or loaded, sets the {@code dirty} flag, so writes made before
+ * the dataset was checked after restart are detected too. Flag is set asynchronously and writes
+ * do not wait for it, write which could not set it lets the next write try again. Dataset check
+ * waits for the flag being set, so it never misses a completed write.
+ */
+public final class Dataset {
+
+    private static final Logger LOGGER = Logger.getLogger(Dataset.class.getName());
+
+    private final String name;
+    private final StatementRegistry.Handle selectMeta;
+    private final StatementRegistry.Handle insertMeta;
+    private final StatementRegistry.Handle dirtyMeta;
+    // Stored dataset may be current and no write was recorded yet
+    private final AtomicBoolean clean;
+    // Last marking of the dataset as modified
+    private volatile CompletableFuture<?> marking;
+
+    /**
+     * Creates an instance of dataset state.
+     *
+     * @param name dataset name, key of the meta table row
+     * @param statements configured statements registry with {@code select-meta}, {@code insert-meta}
+     *                   and {@code dirty-meta} statements
+     */
+    public Dataset(final String name, final StatementRegistry statements) {
+        this.name = name;
+        this.selectMeta = statements.handle("select-meta");
+        this.insertMeta = statements.handle("insert-meta");
+        this.dirtyMeta = statements.handle("dirty-meta");
+        // State of stored dataset is not known before it is checked, it may be current.
+        this.clean = new AtomicBoolean(true);
+        this.marking = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Check whether stored dataset was loaded from source with given checksum and was not modified.
+     * Marking of the dataset as modified which is still in progress is awaited first.
+     *
+     * @param checksum checksum of dataset source
+     * @return value of {@code true} when dataset does not have to be seeded again
+     */
+    public CompletionStage<Boolean> isCurrent(final String checksum) {
+        return marking.handle((rs, t) -> null).thenCompose(v -> selectMeta.executeAsync(name)).thenApply(rs -> {
+            final Row row = rs.one();
+            final boolean current = row != null && checksum.equals(row.getString("checksum")) && !row.getBoolean("dirty");
+            LOGGER.fine(() -> String.format("Dataset %s is %s", name, current ? "current" : "not current"));
+            clean.set(current);
+            return current;
+        });
+    }
+
+    /**
+     * Mark dataset as being reset. Dataset is not current until it is loaded again.
+     *
+     * @return stage completed when dataset was marked
+     */
+    public CompletionStage<Void> resetting() {
+        clean.set(false);
+        return dirtyMeta.executeAsync(name).thenAccept(rs -> { });
+    }
+
+    /**
+     * Record dataset loaded from source with given checksum.
+     *
+     * @param checksum checksum of dataset source
+     * @param rows number of loaded rows
+     * @return stage completed when dataset state was stored
+     */
+    public CompletionStage<Void> loaded(final String checksum, final long rows) {
+        return insertMeta.executeAsync(name, checksum, rows).thenAccept(rs -> clean.set(true));
+    }
+
+    /**
+     * Record modification of the dataset. Only first modification of this process and first
+     * modification after dataset was loaded or found current updates the meta table.
+     */
+    public void modified() {
+        if (clean.compareAndSet(true, false)) {
+            CompletionStage<?> marked;
+            try {
+                marked = dirtyMeta.executeAsync(name);
+            } catch (RuntimeException ex) {
+                marked = CompletableFuture.failedFuture(ex);
+            }
+            marking = marked.whenComplete((rs, t) -> {
+                if (t != null) {
+                    clean.set(true);
+                    LOGGER.log(Level.WARNING, t, () -> String.format(
+                            "Could not mark dataset %s as modified: %s", name, t.getMessage()));
+                }
+            }).toCompletableFuture();
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import io.helidon.metrics.RegistryFactory;
+
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Sampling;
+import com.datastax.oss.driver.api.core.CqlSession;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetadataBuilder;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Bridge of driver session and node metrics into application metrics.
+ * <p>Driver metrics enabled by {@code db.connection.metrics} are kept in driver's Dropwizard registry,
+ * which is observed, so metrics of nodes added or expired later are bridged or removed too. Metrics
+ * are published as gauges reading driver metric on every scrape:
+ * <ul>
+ *     <li>session metric {@code <name>} as {@code driver.session.<name>}</li>
+ *     <li>node metric {@code <name>} as {@code driver.node.<name>} tagged with {@code node} address</li>
+ *     <li>counters and gauges with their value, meters with {@code .count} suffix</li>
+ *     <li>timers and histograms with {@code .count} suffix and quantiles 0.5, 0.9, 0.99, 0.999 and maximum
+ *         tagged with {@code quantile}, the same as {@code endpoint.latency} of {@link EndpointMetrics}</li>
+ * </ul>
+ * Driver latency histograms are recomputed every driver refresh interval.
+ */
+public final class DriverMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(DriverMetrics.class.getName());
+
+    private static final String SESSION_PREFIX = "driver.session.";
+    private static final String NODE_PREFIX = "driver.node.";
+    // Driver node metrics are named nodes.<address>.<metric>
+    private static final String NODES = "nodes.";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private DriverMetrics() {
+        throw new UnsupportedOperationException("Instances of DriverMetrics class are not allowed");
+    }
+
+    /**
+     * Publish metrics of the session as application metrics.
+     *
+     * @param session Cassandra database session
+     */
+    public static void bridge(final CqlSession session) {
+        session.getMetrics().ifPresentOrElse(
+                driverMetrics -> driverMetrics.getRegistry().addListener(
+                        new Listener(session.getContext().getSessionName() + ".")),
+                () -> LOGGER.info("Driver metrics are disabled"));
+    }
+
+    // Registers application metrics of added driver metrics and removes them with driver metrics.
+    private static final class Listener extends MetricRegistryListener.Base {
+
+        private final String sessionPrefix;
+        private final MetricRegistry metrics;
+        // Application metrics registered for driver metric name
+        private final Map<String, List<MetricID>> bridged;
+
+        private Listener(final String sessionPrefix) {
+            this.sessionPrefix = sessionPrefix;
+            this.metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+            this.bridged = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public void onGaugeAdded(final String name, final com.codahale.metrics.Gauge<?> gauge) {
+            final Bridged target = new Bridged(name);
+            if (gauge.getValue() instanceof Number) {
+                target.gauge("", null, () -> (Number) gauge.getValue());
+            }
+            target.done();
+        }
+
+        @Override
+        public void onCounterAdded(final String name, final com.codahale.metrics.Counter counter) {
+            final Bridged target = new Bridged(name);
+            target.gauge("", null, counter::getCount);
+            target.done();
+        }
+
+        @Override
+        public void onMeterAdded(final String name, final com.codahale.metrics.Meter meter) {
+            final Bridged target = new Bridged(name);
+            target.gauge(".count", null, meter::getCount);
+            target.done();
+        }
+
+        @Override
+        public void onHistogramAdded(final String name, final com.codahale.metrics.Histogram histogram) {
+            sampling(name, histogram, histogram, MetricUnits.NONE);
+        }
+
+        @Override
+        public void onTimerAdded(final String name, final com.codahale.metrics.Timer timer) {
+            sampling(name, timer, timer, MetricUnits.NANOSECONDS);
+        }
+
+        @Override
+        public void onGaugeRemoved(final String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onCounterRemoved(final String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onMeterRemoved(final String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onHistogramRemoved(final String name) {
+            remove(name);
+        }
+
+        @Override
+        public void onTimerRemoved(final String name) {
+            remove(name);
+        }
+
+        private void sampling(final String name, final Counting counting, final Sampling sampling, final String unit) {
+            final Bridged target = new Bridged(name);
+            target.gauge(".count", null, counting::getCount);
+            for (double quantile : QUANTILES) {
+                target.gauge("", unit, () -> sampling.getSnapshot().getValue(quantile), String.valueOf(quantile));
+            }
+            target.gauge("", unit, () -> sampling.getSnapshot().getMax(), "max");
+            target.done();
+        }
+
+        private void remove(final String name) {
+            final List<MetricID> ids = bridged.remove(name);
+            if (ids != null) {
+                ids.forEach(metrics::remove);
+            }
+        }
+
+        // Application metrics of single driver metric.
+        private final class Bridged {
+
+            private final String driverName;
+            private final String name;
+            private final String description;
+            private final Tag node;
+            private final List<MetricID> ids;
+
+            private Bridged(final String driverName) {
+                this.driverName = driverName;
+                this.ids = new ArrayList<>();
+                final String metric = driverName.startsWith(sessionPrefix)
+                        ? driverName.substring(sessionPrefix.length())
+                        : driverName;
+                final int nodeEnd = metric.indexOf('.', NODES.length());
+                if (metric.startsWith(NODES) && nodeEnd > 0) {
+                    this.name = NODE_PREFIX + metric.substring(nodeEnd + 1);
+                    this.description = String.format("Driver node metric %s", metric.substring(nodeEnd + 1));
+                    this.node = new Tag("node", metric.substring(NODES.length(), nodeEnd));
+                } else {
+                    this.name = SESSION_PREFIX + metric;
+                    this.description = String.format("Driver session metric %s", metric);
+                    this.node = null;
+                }
+            }
+
+            private void gauge(final String suffix, final String unit, final Gauge<Number> gauge, final String quantile) {
+                final List<Tag> tags = new ArrayList<>(2);
+                if (node != null) {
+                    tags.add(node);
+                }
+                if (quantile != null) {
+                    tags.add(new Tag("quantile", quantile));
+                }
+                final MetadataBuilder metadata = Metadata.builder()
+                        .withName(name + suffix)
+                        .withDescription(description)
+                        .withType(MetricType.GAUGE);
+                if (unit != null) {
+                    metadata.withUnit(unit);
+                }
+                final Tag[] tagsArray = tags.toArray(new Tag[0]);
+                metrics.register(metadata.build(), gauge, tagsArray);
+                ids.add(new MetricID(name + suffix, tagsArray));
+            }
+
+            private void gauge(final String suffix, final String unit, final Gauge<Number> gauge) {
+                gauge(suffix, unit, gauge, null);
+            }
+
+            private void done() {
+                bridged.put(driverName, List.copyOf(ids));
+                LOGGER.finest(() -> String.format("Driver metric %s published as %s", driverName, name));
+            }
+
+        }
+
+    }
+
+}
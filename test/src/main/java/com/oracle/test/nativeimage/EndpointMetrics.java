@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.webserver.Handler;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.Meter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Request rates, error rates and latency histograms of web service endpoints.
+ * <p>Every timed endpoint publishes application metrics tagged with endpoint name:
+ * <ul>
+ *     <li>{@code endpoint.requests}, {@code endpoint.errors}: meters of all requests and of requests
+ *         which failed, responded with error status or with HTTP status 400 and above</li>
+ *     <li>{@code endpoint.latency}: gauges of latency quantiles 0.5, 0.9, 0.99, 0.999 and maximum
+ *         (tag {@code quantile} is {@code max}) of request phases (tag {@code phase}): {@code total} from
+ *         request to sent response, {@code cassandra} waiting on database, {@code encode} encoding response
+ *         content and {@code write} sending response</li>
+ * </ul>
+ * Latencies are recorded into HdrHistogram {@link Recorder} without locking. Quantiles are computed from
+ * latencies recorded since previous refresh, which happens when gauge is read at least refresh interval
+ * after previous one, so each scrape of {@code /metrics} reports latencies since previous scrape.
+ * <p>Request handlers mark phase boundaries on {@link Timing} of the request, phases which were not marked
+ * are not recorded.
+ */
+public final class EndpointMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(EndpointMetrics.class.getName());
+
+    // Default minimal interval between histogram refreshes in milliseconds
+    private static final long DEFAULT_REFRESH = 1000;
+    // Published latency quantiles
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final boolean enabled;
+    private final long refreshNanos;
+    private final MetricRegistry metrics;
+
+    private EndpointMetrics(final boolean enabled, final long refreshNanos) {
+        this.enabled = enabled;
+        this.refreshNanos = refreshNanos;
+        this.metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+    }
+
+    /**
+     * Creates endpoint metrics from {@code app.endpoint-metrics} configuration node.
+     *
+     * @param config endpoint metrics configuration
+     * @return endpoint metrics
+     */
+    public static EndpointMetrics create(final Config config) {
+        final boolean enabled = config.get("enabled").asBoolean().orElse(true);
+        final long refresh = config.get("refresh").asLong().orElse(DEFAULT_REFRESH);
+        LOGGER.info(() -> String.format("Endpoint metrics enabled: %b, refresh: %d ms", enabled, refresh));
+        return new EndpointMetrics(enabled, TimeUnit.MILLISECONDS.toNanos(refresh));
+    }
+
+    /**
+     * Wrap handler to record metrics of endpoint.
+     * Should be called once per endpoint when routing is built.
+     *
+     * @param name endpoint name used as metrics tag, e.g. {@code cassandra.select}
+     * @param handler request handler
+     * @return handler recording endpoint metrics
+     */
+    public Handler timed(final String name, final Handler handler) {
+        if (!enabled) {
+            return handler;
+        }
+        final Endpoint endpoint = new Endpoint(name);
+        return (request, response) -> {
+            final Timing timing = new Timing(endpoint);
+            request.context().register(timing);
+            response.whenSent().whenComplete((res, t) -> timing.sent(response, t));
+            handler.accept(request, response);
+        };
+    }
+
+    /**
+     * Timing of the request.
+     * Request of endpoint without metrics gets timing which ignores all marks.
+     *
+     * @param request HTTP request
+     * @return timing of the request
+     */
+    public static Timing timing(final ServerRequest request) {
+        return request.context().get(Timing.class).orElse(Timing.NONE);
+    }
+
+    /**
+     * Phase boundaries of single request.
+     * Marks may be set from any thread, each of them should be set once.
+     */
+    public static final class Timing {
+
+        private static final Timing NONE = new Timing(null);
+
+        private final Endpoint endpoint;
+        private final long start;
+        private volatile long cassandra;
+        private volatile long encoded;
+        private volatile boolean failed;
+
+        private Timing(final Endpoint endpoint) {
+            this.endpoint = endpoint;
+            this.start = endpoint != null ? System.nanoTime() : 0;
+            if (endpoint != null) {
+                endpoint.requests.mark();
+            }
+        }
+
+        /**
+         * Mark end of waiting on database.
+         */
+        public void cassandra() {
+            if (endpoint != null) {
+                cassandra = System.nanoTime();
+            }
+        }
+
+        /**
+         * Mark end of response content encoding.
+         */
+        public void encoded() {
+            if (endpoint != null) {
+                encoded = System.nanoTime();
+            }
+        }
+
+        /**
+         * Mark request as failed, e.g. when response with exception status is sent.
+         */
+        public void failed() {
+            failed = true;
+        }
+
+        // Record phases of sent response.
+        private void sent(final ServerResponse response, final Throwable t) {
+            final long now = System.nanoTime();
+            endpoint.total.record(now - start);
+            long from = start;
+            if (cassandra != 0) {
+                endpoint.cassandra.record(cassandra - from);
+                from = cassandra;
+            }
+            if (encoded != 0) {
+                endpoint.encode.record(encoded - from);
+                from = encoded;
+            }
+            if (from != start) {
+                endpoint.write.record(now - from);
+            }
+            if (failed || t != null || response.status().code() >= 400) {
+                endpoint.errors.mark();
+            }
+        }
+
+    }
+
+    // Metrics of single endpoint.
+    private final class Endpoint {
+
+        private final Meter requests;
+        private final Meter errors;
+        private final Latency total;
+        private final Latency cassandra;
+        private final Latency encode;
+        private final Latency write;
+
+        private Endpoint(final String name) {
+            final Tag endpoint = new Tag("endpoint", name);
+            this.requests = metrics.meter(
+                    Metadata.builder()
+                            .withName("endpoint.requests")
+                            .withDescription("Requests received by endpoint")
+                            .withType(MetricType.METERED)
+                            .build(),
+                    endpoint);
+            this.errors = metrics.meter(
+                    Metadata.builder()
+                            .withName("endpoint.errors")
+                            .withDescription("Failed requests of endpoint")
+                            .withType(MetricType.METERED)
+                            .build(),
+                    endpoint);
+            this.total = new Latency(endpoint, "total");
+            this.cassandra = new Latency(endpoint, "cassandra");
+            this.encode = new Latency(endpoint, "encode");
+            this.write = new Latency(endpoint, "write");
+        }
+
+    }
+
+    // Latency histogram of single request phase published as quantile gauges.
+    private final class Latency {
+
+        private final Recorder recorder;
+        private Histogram snapshot;
+        private long lastRefresh;
+
+        private Latency(final Tag endpoint, final String phase) {
+            this.recorder = new Recorder(3);
+            this.snapshot = recorder.getIntervalHistogram();
+            this.lastRefresh = System.nanoTime();
+            final Metadata metadata = Metadata.builder()
+                    .withName("endpoint.latency")
+                    .withDescription("Latency quantiles of endpoint request phases since previous refresh")
+                    .withType(MetricType.GAUGE)
+                    .withUnit(MetricUnits.MICROSECONDS)
+                    .build();
+            final Tag phaseTag = new Tag("phase", phase);
+            for (double quantile : QUANTILES) {
+                metrics.register(metadata,
+                                 (Gauge<Long>) () -> value(quantile),
+                                 endpoint, phaseTag, new Tag("quantile", String.valueOf(quantile)));
+            }
+            metrics.register(metadata,
+                             (Gauge<Long>) this::max,
+                             endpoint, phaseTag, new Tag("quantile", "max"));
+        }
+
+        private void record(final long nanos) {
+            recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        }
+
+        private synchronized long value(final double quantile) {
+            return refresh().getValueAtPercentile(quantile * 100.0);
+        }
+
+        private synchronized long max() {
+            return refresh().getMaxValue();
+        }
+
+        // Snapshot of latencies since previous refresh, refreshed at most once per refresh interval.
+        private Histogram refresh() {
+            final long now = System.nanoTime();
+            if (now - lastRefresh >= refreshNanos) {
+                snapshot = recorder.getIntervalHistogram(snapshot);
+                lastRefresh = now;
+            }
+            return snapshot;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+/**
+ * Count-min sketch estimating recent access frequency of cache keys.
+ * <p>Each key is counted in one counter of each of four rows, estimate is the smallest
+ * of those counters. Counters saturate at {@code 15} and all of them are halved once
+ * sample size of increments was reached, so the sketch follows recent popularity.
+ * Not thread safe, caller must synchronize access.
+ */
+final class FrequencySketch {
+
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0x9e3779b9, 0x85ebca6b, 0xc2b2ae35};
+
+    private final int[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * Creates an instance of frequency sketch.
+     *
+     * @param maximumSize maximum number of cached entries
+     */
+    FrequencySketch(final int maximumSize) {
+        final int width = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+        this.table = new int[ROWS][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * Math.max(16, maximumSize);
+        this.additions = 0;
+    }
+
+    /**
+     * Record access of the key.
+     *
+     * @param key cache key
+     */
+    void increment(final Object key) {
+        final int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < ROWS; i++) {
+            final int index = index(hash, i);
+            if (table[i][index] < MAX_COUNT) {
+                table[i][index]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Estimated access frequency of the key.
+     *
+     * @param key cache key
+     * @return estimated frequency
+     */
+    int frequency(final Object key) {
+        final int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < ROWS; i++) {
+            frequency = Math.min(frequency, table[i][index(hash, i)]);
+        }
+        return frequency;
+    }
+
+    // Age all counters.
+    private void reset() {
+        for (int[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(final int hash, final int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % ROWS];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(final int hashCode) {
+        int h = hashCode * 0x45d9f3b;
+        return h ^ (h >>> 16);
+    }
+
+}
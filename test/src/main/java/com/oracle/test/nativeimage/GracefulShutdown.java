@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.helidon.common.http.Http;
+import io.helidon.config.Config;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+import io.helidon.webserver.Service;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+
+import static io.helidon.tests.integration.tools.service.AppResponseWriter.sendException;
+
+/**
+ * Draining shutdown of the application.
+ * <p>Registered in front of guarded service, or as {@code guard} handler
+ * in front of single route, it counts requests in flight. Shutdown sequence:
+ * <ol>
+ *     <li>new requests of guarded service are rejected with {@code 503} status</li>
+ *     <li>requests in flight are awaited until they are sent or {@code deadline} milliseconds passed</li>
+ *     <li>pending writes of {@link WriteBuffer} are flushed</li>
+ *     <li>database session is closed asynchronously</li>
+ * </ol>
+ * Web server is stopped by the caller when sequence completes. Sequence runs once, later calls return
+ * the same stage. Drained, aborted and rejected request counts are logged.
+ */
+public final class GracefulShutdown implements Service {
+
+    private static final Logger LOGGER = Logger.getLogger(GracefulShutdown.class.getName());
+
+    // Default deadline of requests in flight in milliseconds
+    private static final long DEFAULT_DEADLINE = 10_000;
+
+    private final long deadline;
+    private final WriteBuffer writeBuffer;
+    private final StatementRegistry statements;
+    private final AtomicInteger inFlight;
+    private final AtomicLong rejected;
+    // Completed when no request is in flight after shutdown started
+    private final CompletableFuture<Void> quiet;
+    private volatile boolean closed;
+    // Shutdown sequence, guarded by this
+    private CompletableFuture<Void> sequence;
+
+    private GracefulShutdown(final long deadline, final WriteBuffer writeBuffer, final StatementRegistry statements) {
+        this.deadline = deadline;
+        this.writeBuffer = writeBuffer;
+        this.statements = statements;
+        this.inFlight = new AtomicInteger();
+        this.rejected = new AtomicLong();
+        this.quiet = new CompletableFuture<>();
+        this.closed = false;
+        this.sequence = null;
+    }
+
+    /**
+     * Creates graceful shutdown from {@code app.shutdown} configuration node.
+     *
+     * @param config shutdown configuration
+     * @param writeBuffer write-behind buffer flushed on shutdown
+     * @param statements configured statements registry with database session closed on shutdown
+     * @return graceful shutdown
+     */
+    public static GracefulShutdown create(final Config config, final WriteBuffer writeBuffer, final StatementRegistry statements) {
+        final long deadline = config.get("deadline").asLong().orElse(DEFAULT_DEADLINE);
+        LOGGER.info(() -> String.format("Shutdown deadline of requests in flight: %d ms", deadline));
+        return new GracefulShutdown(deadline, writeBuffer, statements);
+    }
+
+    @Override
+    public void update(Routing.Rules rules) {
+        rules.any(this::guard);
+    }
+
+    /**
+     * Run shutdown sequence.
+     *
+     * @return stage completed when database session was closed
+     */
+    public synchronized CompletionStage<Void> shutdown() {
+        if (sequence == null) {
+            sequence = drain()
+                    .thenCompose(v -> writeBuffer.drain())
+                    .handle((v, t) -> {
+                        if (t != null) {
+                            LOGGER.log(Level.WARNING, t, () -> String.format("Could not drain write buffer: %s", t.getMessage()));
+                        }
+                        return v;
+                    })
+                    .thenCompose(v -> closeSession())
+                    .toCompletableFuture();
+        }
+        return sequence;
+    }
+
+    /**
+     * Whether shutdown sequence has started and new requests are rejected.
+     *
+     * @return value of {@code true} when shutdown has started
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /*
+     * Count request in flight, reject it when shutdown started.
+     * Guards single route when registered in front of its handler.
+     */
+    void guard(final ServerRequest request, final ServerResponse response) {
+        inFlight.incrementAndGet();
+        if (closed) {
+            completed();
+            rejected.incrementAndGet();
+            response.status(Http.Status.SERVICE_UNAVAILABLE_503);
+            response.headers().add(Http.Header.CONNECTION, "close");
+            sendException(response, new RemoteTestException("Server is shutting down."));
+            return;
+        }
+        response.whenSent().whenComplete((res, t) -> completed());
+        request.next();
+    }
+
+    private void completed() {
+        if (inFlight.decrementAndGet() == 0 && closed) {
+            quiet.complete(null);
+        }
+    }
+
+    // Stop accepting requests and wait for requests in flight until deadline.
+    private CompletionStage<Void> drain() {
+        closed = true;
+        final long start = System.nanoTime();
+        final int draining = inFlight.get();
+        if (draining == 0) {
+            quiet.complete(null);
+        }
+        return quiet.completeOnTimeout(null, deadline, TimeUnit.MILLISECONDS)
+                .thenRun(() -> {
+                    final int aborted = Math.max(0, inFlight.get());
+                    final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    LOGGER.info(() -> String.format(
+                            "Requests drained: %d, aborted: %d, rejected: %d, drain time: %d ms",
+                            Math.max(0, draining - aborted), aborted, rejected.get(), elapsed));
+                });
+    }
+
+    // Close database session, nothing to close when it was not connected yet.
+    private CompletionStage<Void> closeSession() {
+        final CompletableFuture<CqlSession> attached = statements.attached().toCompletableFuture();
+        if (attached.isDone() && !attached.isCompletedExceptionally()) {
+            return attached.join().closeAsync().handle((v, t) -> {
+                if (t != null) {
+                    LOGGER.log(Level.WARNING, t, () -> String.format("Could not close database session: %s", t.getMessage()));
+                }
+                return null;
+            });
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.helidon.common.http.Http;
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+import io.helidon.webserver.Handler;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+
+import static io.helidon.tests.integration.tools.service.AppResponseWriter.sendException;
+
+/**
+ * Execution strategy of request handlers.
+ * <p>Supported strategies ({@code app.executor.type} configuration value):
+ * <ul>
+ *     <li>{@code event-loop} - handlers run inline on web server event loop thread</li>
+ *     <li>{@code pool} - handlers run on bounded platform threads pool with bounded queue,
+ *         requests rejected by full queue get {@code 503} response</li>
+ *     <li>{@code virtual} - each handler runs on new virtual thread, requires JDK with virtual
+ *         threads support, otherwise {@code pool} strategy is used</li>
+ * </ul>
+ * Queue depth and active tasks count of selected strategy are published as application metrics.
+ */
+public final class HandlerExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(HandlerExecutor.class.getName());
+
+    private static final String EVENT_LOOP = "event-loop";
+    private static final String POOL = "pool";
+    private static final String VIRTUAL = "virtual";
+
+    private static final int DEFAULT_POOL_SIZE = 4 * Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final String type;
+    // Executor of the handlers, null for event loop strategy
+    private final ExecutorService executor;
+    // Tasks submitted to executor and not started yet
+    private final AtomicLong queued;
+    // Tasks currently running
+    private final AtomicInteger active;
+    private final Counter rejected;
+
+    private HandlerExecutor(final String type, final ExecutorService executor) {
+        this.type = type;
+        this.executor = executor;
+        this.queued = new AtomicLong();
+        this.active = new AtomicInteger();
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.rejected = metrics.counter("handlers.rejected");
+        metrics.register(
+                Metadata.builder()
+                        .withName("handlers.queueDepth")
+                        .withDescription("Handlers waiting for execution")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Long>) queued::get);
+        metrics.register(
+                Metadata.builder()
+                        .withName("handlers.active")
+                        .withDescription("Handlers being executed")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Integer>) active::get);
+    }
+
+    /**
+     * Creates handlers executor from {@code app.executor} configuration node.
+     *
+     * @param config executor configuration
+     * @return handlers executor
+     */
+    public static HandlerExecutor create(final Config config) {
+        final String type = config.get("type").asString().orElse(EVENT_LOOP);
+        final int poolSize = config.get("pool-size").asInt().orElse(DEFAULT_POOL_SIZE);
+        final int queueCapacity = config.get("queue-capacity").asInt().orElse(DEFAULT_QUEUE_CAPACITY);
+        switch (type) {
+            case EVENT_LOOP:
+                return new HandlerExecutor(EVENT_LOOP, null);
+            case POOL:
+                return new HandlerExecutor(POOL, pool(poolSize, queueCapacity));
+            case VIRTUAL:
+                final ExecutorService virtual = virtualThreads();
+                if (virtual != null) {
+                    return new HandlerExecutor(VIRTUAL, virtual);
+                }
+                LOGGER.warning("Virtual threads are not supported by this JDK, using pool of platform threads.");
+                return new HandlerExecutor(POOL, pool(poolSize, queueCapacity));
+            default:
+                throw new IllegalArgumentException(String.format("Unknown handlers executor type: %s", type));
+        }
+    }
+
+    /**
+     * Wrap handler to run using this execution strategy.
+     *
+     * @param handler request handler
+     * @return handler running on this executor
+     */
+    public Handler wrap(final Handler handler) {
+        if (executor == null) {
+            return (request, response) -> {
+                active.incrementAndGet();
+                try {
+                    handler.accept(request, response);
+                } finally {
+                    active.decrementAndGet();
+                }
+            };
+        }
+        return (request, response) -> {
+            queued.incrementAndGet();
+            try {
+                executor.execute(() -> {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        handler.accept(request, response);
+                    } catch (Throwable t) {
+                        LOGGER.log(Level.WARNING, t, () -> String.format("Handler failed: %s", t.getMessage()));
+                        request.next(t);
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                queued.decrementAndGet();
+                rejected.inc();
+                response.status(Http.Status.SERVICE_UNAVAILABLE_503);
+                sendException(response, new RemoteTestException("Request queue is full."));
+            }
+        };
+    }
+
+    /**
+     * Execution strategy type.
+     *
+     * @return strategy type
+     */
+    public String type() {
+        return type;
+    }
+
+    /**
+     * Stop accepting new handlers and release executor threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static ExecutorService pool(final int poolSize, final int queueCapacity) {
+        final AtomicInteger counter = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60L,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    final Thread thread = new Thread(task, String.format("handler-%d", counter.incrementAndGet()));
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Virtual threads API is available since JDK 21, resolve it dynamically to keep JDK 11 compatibility.
+    private static ExecutorService virtualThreads() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException ex) {
+            LOGGER.fine(() -> String.format("Virtual threads executor is not available: %s", ex.getMessage()));
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * How request handlers wait for database calls.
+ * All handlers are written on top of {@code CqlSession.executeAsync}. Selected mode
+ * decides whether handler thread returns immediately or waits for the result.
+ */
+public enum HandlerMode {
+
+    /**
+     * Handler returns immediately and response is sent from driver I/O thread
+     * when database call completes. Web server event loop thread is never blocked.
+     */
+    ASYNC {
+        @Override
+        <T> CompletionStage<T> apply(final CompletionStage<T> stage) {
+            return stage;
+        }
+    },
+
+    /**
+     * Handler thread waits until database call completes, the same way
+     * as blocking {@code CqlSession.execute} does.
+     */
+    BLOCKING {
+        @Override
+        <T> CompletionStage<T> apply(final CompletionStage<T> stage) {
+            final CompletableFuture<T> future = stage.toCompletableFuture();
+            // Wait for completion without throwing, failure is handled by the caller.
+            future.handle((result, t) -> null).join();
+            return future;
+        }
+    };
+
+    /**
+     * Apply this mode on database call.
+     *
+     * @param <T> type of database call result
+     * @param stage database call
+     * @return database call to be processed by request handler
+     */
+    abstract <T> CompletionStage<T> apply(CompletionStage<T> stage);
+
+    /**
+     * Returns handler mode matching provided configuration value.
+     *
+     * @param name handler mode name (case insensitive)
+     * @return handler mode
+     * @throws IllegalArgumentException when no mode matches provided name
+     */
+    static HandlerMode parse(final String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import io.helidon.config.Config;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.metadata.NodeState;
+
+/**
+ * Cached database health for liveness and readiness probes.
+ * <p>Background check pings the database every {@code interval} milliseconds and collects state
+ * and open connections of every node from driver metadata. Ping is executed directly by the session,
+ * so it is not counted and sampled as application statement. Probes read the last check result only,
+ * so they never reach the database. Application is ready when startup has completed, shutdown did not
+ * start yet, last ping succeeded and session has at least one open connection to a node which is up.
+ * Application is live while checks keep completing, database outage does not make it not live.
+ */
+public final class HealthChecker {
+
+    private static final Logger LOGGER = Logger.getLogger(HealthChecker.class.getName());
+
+    private static final long DEFAULT_INTERVAL = 1000;
+    private static final long DEFAULT_TIMEOUT = 1000;
+
+    private final long interval;
+    private final long timeout;
+    private final StatementRegistry statements;
+    private final SimpleStatement ping;
+    private final Startup startup;
+    private final GracefulShutdown shutdown;
+    private final ScheduledExecutorService scheduler;
+    // Result of the last completed check
+    private volatile Status status;
+
+    private HealthChecker(final long interval,
+                          final long timeout,
+                          final StatementRegistry statements,
+                          final Startup startup,
+                          final GracefulShutdown shutdown) {
+        this.interval = interval;
+        this.timeout = timeout;
+        this.statements = statements;
+        this.ping = statements.statement("ping")
+                .setTimeout(Duration.ofMillis(timeout))
+                .setIdempotent(true);
+        this.startup = startup;
+        this.shutdown = shutdown;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "health-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.status = Status.unknown();
+    }
+
+    /**
+     * Creates health checker from {@code app.health} configuration node.
+     *
+     * @param config health check configuration
+     * @param statements configured statements registry with {@code ping} statement and database session
+     * @param startup startup readiness
+     * @param shutdown graceful shutdown, application is not ready once it started
+     * @return health checker
+     */
+    public static HealthChecker create(final Config config,
+                                       final StatementRegistry statements,
+                                       final Startup startup,
+                                       final GracefulShutdown shutdown) {
+        final long interval = config.get("interval").asLong().orElse(DEFAULT_INTERVAL);
+        final long timeout = config.get("timeout").asLong().orElse(DEFAULT_TIMEOUT);
+        LOGGER.info(() -> String.format("Health check interval: %d ms, timeout: %d ms", interval, timeout));
+        return new HealthChecker(interval, timeout, statements, startup, shutdown);
+    }
+
+    /**
+     * Run first check and schedule next checks.
+     *
+     * @return stage completed when first check has completed, successful or not
+     */
+    public CompletionStage<Void> start() {
+        return check().thenRun(this::schedule);
+    }
+
+    /**
+     * Stop scheduled checks.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Whether application is live.
+     *
+     * @return value of {@code false} when checks stopped completing
+     */
+    public boolean isLive() {
+        final Status current = status;
+        // Check in progress completes within timeout, allow one missed check.
+        return current.checked == 0
+                || TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - current.checked) <= 2 * (interval + timeout);
+    }
+
+    /**
+     * Whether application is ready to serve requests.
+     *
+     * @return value of {@code true} when startup has completed, shutdown did not start
+     *         and database session has healthy connections
+     */
+    public boolean isReady() {
+        return isReady(status);
+    }
+
+    /**
+     * Result of the last check as JSON object.
+     *
+     * @return health JSON object
+     */
+    public JsonObject toJson() {
+        final Status current = status;
+        return Json.createObjectBuilder()
+                .add("live", isLive())
+                .add("ready", isReady(current))
+                .add("phases", startup.toJson().getJsonObject("phases"))
+                .add("database", current.json)
+                .build();
+    }
+
+    // Orchestrator stops routing requests to not ready instance before they are rejected by shutdown.
+    private boolean isReady(final Status current) {
+        return startup.isReady() && !shutdown.isClosed() && current.healthy;
+    }
+
+    // Next check is scheduled after this one completed, so slow checks never overlap.
+    private void schedule() {
+        try {
+            scheduler.schedule(() -> check().thenRun(this::schedule), interval, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException ex) {
+            LOGGER.finest(() -> String.format("Health check was not scheduled: %s", ex.getMessage()));
+        }
+    }
+
+    // Ping the database and collect pool state of every node, never completes exceptionally.
+    private CompletableFuture<Void> check() {
+        final CompletableFuture<CqlSession> attached = statements.attached().toCompletableFuture();
+        if (!attached.isDone() || attached.isCompletedExceptionally()) {
+            update(Status.failed("Database session is not connected"));
+            return CompletableFuture.completedFuture(null);
+        }
+        final long start = System.nanoTime();
+        return attached.join().executeAsync(ping)
+                .toCompletableFuture()
+                .handle((rs, t) -> {
+                    final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    try {
+                        update(Status.create(attached.join(), t, latency));
+                    } catch (RuntimeException ex) {
+                        update(Status.failed(String.format("Could not read node state: %s", ex.getMessage())));
+                    }
+                    return null;
+                });
+    }
+
+    private void update(final Status next) {
+        final Status previous = status;
+        status = next;
+        if (previous.healthy != next.healthy) {
+            LOGGER.info(() -> String.format("Database is %s: %s", next.healthy ? "healthy" : "not healthy", next.json));
+        }
+    }
+
+    // Immutable check result, JSON is built once per check.
+    private static final class Status {
+
+        private final boolean healthy;
+        // Check completion time from System.nanoTime(), 0 before first check
+        private final long checked;
+        private final JsonObject json;
+
+        private Status(final boolean healthy, final long checked, final JsonObject json) {
+            this.healthy = healthy;
+            this.checked = checked;
+            this.json = json;
+        }
+
+        private static Status unknown() {
+            return new Status(false, 0, Json.createObjectBuilder()
+                    .add("reachable", false)
+                    .add("error", "Not checked yet")
+                    .build());
+        }
+
+        private static Status failed(final String error) {
+            return new Status(false, System.nanoTime(), Json.createObjectBuilder()
+                    .add("reachable", false)
+                    .add("error", error)
+                    .build());
+        }
+
+        // Session is healthy when ping succeeded and any node which is up has open connection.
+        private static Status create(final CqlSession session, final Throwable t, final long latency) {
+            final JsonArrayBuilder nodes = Json.createArrayBuilder();
+            int connections = 0;
+            for (Node node : session.getMetadata().getNodes().values()) {
+                final NodeState state = node.getState();
+                final int open = node.getOpenConnections();
+                if (state == NodeState.UP) {
+                    connections += open;
+                }
+                nodes.add(Json.createObjectBuilder()
+                                  .add("node", String.valueOf(node.getEndPoint()))
+                                  .add("datacenter", String.valueOf(node.getDatacenter()))
+                                  .add("state", state.name())
+                                  .add("connections", open)
+                                  .add("reconnecting", node.isReconnecting()));
+            }
+            final boolean reachable = t == null;
+            final JsonObjectBuilder json = Json.createObjectBuilder()
+                    .add("reachable", reachable)
+                    .add("latency", latency)
+                    .add("connections", connections)
+                    .add("nodes", nodes);
+            if (!reachable) {
+                final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                json.add("error", cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+            }
+            return new Status(reachable && connections > 0, System.nanoTime(), json.build());
+        }
+
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable buffer of JSON text encoded in UTF-8.
+ * <p>Numbers and strings are written directly as bytes, without intermediate JSON values.
+ * String escaping follows JSON-P writer, so output is byte compatible with JSON-P serialization.
+ * Not thread safe.
+ */
+public final class JsonOutput {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_INT = String.valueOf(Integer.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MIN_LONG = String.valueOf(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+    private int size;
+
+    /**
+     * Creates an instance of JSON output buffer.
+     *
+     * @param capacity initial capacity in bytes
+     */
+    public JsonOutput(final int capacity) {
+        this.buffer = new byte[Math.max(16, capacity)];
+        this.size = 0;
+    }
+
+    /**
+     * Write single byte.
+     *
+     * @param b byte to write
+     * @return this output
+     */
+    public JsonOutput write(final int b) {
+        ensure(1);
+        buffer[size++] = (byte) b;
+        return this;
+    }
+
+    /**
+     * Write bytes.
+     *
+     * @param bytes bytes to write
+     * @return this output
+     */
+    public JsonOutput write(final byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+        return this;
+    }
+
+    /**
+     * Write JSON {@code null}.
+     *
+     * @return this output
+     */
+    public JsonOutput writeNull() {
+        return write(NULL);
+    }
+
+    /**
+     * Write JSON boolean.
+     *
+     * @param value value to write
+     * @return this output
+     */
+    public JsonOutput writeBoolean(final boolean value) {
+        return write(value ? TRUE : FALSE);
+    }
+
+    /**
+     * Write JSON number.
+     *
+     * @param value value to write
+     * @return this output
+     */
+    public JsonOutput writeInt(final int value) {
+        if (value == Integer.MIN_VALUE) {
+            return write(MIN_INT);
+        }
+        return writeLong(value);
+    }
+
+    /**
+     * Write JSON number.
+     *
+     * @param value value to write
+     * @return this output
+     */
+    public JsonOutput writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            return write(MIN_LONG);
+        }
+        long remaining = Math.abs(value);
+        int digits = 1;
+        for (long limit = 10; remaining >= limit && digits < 19; limit *= 10) {
+            digits++;
+        }
+        final int length = value < 0 ? digits + 1 : digits;
+        ensure(length);
+        int pos = size + length;
+        do {
+            buffer[--pos] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+        if (value < 0) {
+            buffer[--pos] = '-';
+        }
+        size += length;
+        return this;
+    }
+
+    /**
+     * Write JSON string.
+     *
+     * @param value value to write
+     * @return this output
+     */
+    public JsonOutput writeString(final String value) {
+        return writeString(ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Write JSON string from UTF-8 encoded bytes.
+     * Buffer position is not changed.
+     *
+     * @param utf8 UTF-8 encoded string
+     * @return this output
+     */
+    public JsonOutput writeString(final ByteBuffer utf8) {
+        final int end = utf8.limit();
+        ensure(end - utf8.position() + 2);
+        buffer[size++] = '"';
+        for (int i = utf8.position(); i < end; i++) {
+            final byte b = utf8.get(i);
+            if (b == '"' || b == '\\') {
+                ensure(2 + end - i);
+                buffer[size++] = '\\';
+                buffer[size++] = b;
+            } else if (b >= 0 && b < 0x20) {
+                ensure(6 + end - i);
+                escapeControl(b);
+            } else {
+                buffer[size++] = b;
+            }
+        }
+        buffer[size++] = '"';
+        return this;
+    }
+
+    /**
+     * Number of bytes written.
+     *
+     * @return size of the output
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Discard written bytes.
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Copy of written bytes.
+     *
+     * @return written bytes
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Written bytes as buffer, valid until this output is written again.
+     *
+     * @return written bytes
+     */
+    public ByteBuffer buffer() {
+        return ByteBuffer.wrap(buffer, 0, size);
+    }
+
+    // Caller must ensure 6 bytes of capacity.
+    private void escapeControl(final byte b) {
+        buffer[size++] = '\\';
+        switch (b) {
+            case '\b':
+                buffer[size++] = 'b';
+                break;
+            case '\f':
+                buffer[size++] = 'f';
+                break;
+            case '\n':
+                buffer[size++] = 'n';
+                break;
+            case '\r':
+                buffer[size++] = 'r';
+                break;
+            case '\t':
+                buffer[size++] = 't';
+                break;
+            default:
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[b >> 4];
+                buffer[size++] = HEX[b & 0xf];
+        }
+    }
+
+    private void ensure(final int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(size + length, 2 * buffer.length));
+        }
+    }
+
+}
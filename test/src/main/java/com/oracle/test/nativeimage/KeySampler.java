@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.helidon.config.Config;
+
+/**
+ * Sampler of row keys following access distribution of real workloads.
+ * <p>Keys are {@code first-key .. first-key + keys - 1} and grow with {@link #nextInsert()}. Distributions:
+ * <ul>
+ *     <li>{@code uniform} - every key is equally likely</li>
+ *     <li>{@code zipfian} - key popularity follows Zipf's law with exponent {@code theta},
+ *         lowest keys are the most popular ones</li>
+ *     <li>{@code hotspot} - {@code hot-access} fraction of samples hits {@code hot-fraction} of lowest keys</li>
+ *     <li>{@code latest} - zipfian over key age, most recently inserted keys are the most popular ones</li>
+ * </ul>
+ * Sampler is not thread safe, samples are reproducible for the same {@code seed}. Concurrent workers
+ * should use their own {@link #split()} instances, which share inserted keys.
+ */
+public final class KeySampler {
+
+    private static final long DEFAULT_SEED = 42;
+    private static final int DEFAULT_KEYS = 1000;
+    private static final double DEFAULT_THETA = 0.99;
+    private static final double DEFAULT_HOT_FRACTION = 0.2;
+    private static final double DEFAULT_HOT_ACCESS = 0.8;
+
+    private final Distribution distribution;
+    private final int firstKey;
+    private final int keys;
+    private final Zipfian zipfian;
+    private final double hotFraction;
+    private final double hotAccess;
+    private final SplittableRandom random;
+    // Last inserted key, shared by split samplers
+    private final AtomicInteger lastKey;
+
+    private KeySampler(final Distribution distribution,
+                       final int firstKey,
+                       final int keys,
+                       final Zipfian zipfian,
+                       final double hotFraction,
+                       final double hotAccess,
+                       final SplittableRandom random,
+                       final AtomicInteger lastKey) {
+        this.distribution = distribution;
+        this.firstKey = firstKey;
+        this.keys = keys;
+        this.zipfian = zipfian;
+        this.hotFraction = hotFraction;
+        this.hotAccess = hotAccess;
+        this.random = random;
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * Creates key sampler from configuration node.
+     *
+     * @param config key sampler configuration
+     * @return key sampler
+     */
+    public static KeySampler create(final Config config) {
+        final Distribution distribution = config.get("distribution").asString()
+                .map(Distribution::parse)
+                .orElse(Distribution.UNIFORM);
+        final int firstKey = config.get("first-key").asInt().orElse(1);
+        final int keys = config.get("keys").asInt().orElse(DEFAULT_KEYS);
+        final double theta = config.get("theta").asDouble().orElse(DEFAULT_THETA);
+        final double hotFraction = config.get("hot-fraction").asDouble().orElse(DEFAULT_HOT_FRACTION);
+        final double hotAccess = config.get("hot-access").asDouble().orElse(DEFAULT_HOT_ACCESS);
+        final long seed = config.get("seed").asLong().orElse(DEFAULT_SEED);
+        return create(distribution, firstKey, keys, theta, hotFraction, hotAccess, seed);
+    }
+
+    /**
+     * Creates key sampler.
+     *
+     * @param distribution key access distribution
+     * @param firstKey lowest key
+     * @param keys number of initial keys
+     * @param theta zipfian exponent, between {@code 0} and {@code 1} exclusive
+     * @param hotFraction fraction of keys in hotspot
+     * @param hotAccess fraction of samples hitting hotspot
+     * @param seed random seed
+     * @return key sampler
+     */
+    public static KeySampler create(final Distribution distribution,
+                                    final int firstKey,
+                                    final int keys,
+                                    final double theta,
+                                    final double hotFraction,
+                                    final double hotAccess,
+                                    final long seed) {
+        if (keys < 1) {
+            throw new IllegalArgumentException(String.format("Number of keys %d is not positive.", keys));
+        }
+        if (hotFraction <= 0 || hotFraction > 1 || hotAccess < 0 || hotAccess > 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Hotspot fraction %f and access %f must be between 0 and 1.", hotFraction, hotAccess));
+        }
+        final Zipfian zipfian = distribution == Distribution.ZIPFIAN || distribution == Distribution.LATEST
+                ? new Zipfian(keys, theta)
+                : null;
+        return new KeySampler(distribution, firstKey, keys, zipfian, hotFraction, hotAccess,
+                              new SplittableRandom(seed), new AtomicInteger(firstKey + keys - 1));
+    }
+
+    /**
+     * Sampler with independent random sequence sharing inserted keys with this sampler.
+     *
+     * @return new key sampler
+     */
+    public KeySampler split() {
+        return new KeySampler(distribution, firstKey, keys, zipfian, hotFraction, hotAccess, random.split(), lastKey);
+    }
+
+    /**
+     * Key of existing row to read or update.
+     *
+     * @return sampled key
+     */
+    public int next() {
+        switch (distribution) {
+            case ZIPFIAN:
+                return firstKey + (int) zipfian.sample(random.nextDouble());
+            case HOTSPOT:
+                final int hotKeys = Math.max(1, (int) (keys * hotFraction));
+                if (hotKeys == keys || random.nextDouble() < hotAccess) {
+                    return firstKey + random.nextInt(hotKeys);
+                }
+                return firstKey + hotKeys + random.nextInt(keys - hotKeys);
+            case LATEST:
+                // Ranks cover initial number of keys, older keys are never sampled once more keys were inserted.
+                final int last = lastKey.get();
+                return Math.max(firstKey, last - (int) zipfian.sample(random.nextDouble()));
+            case UNIFORM:
+            default:
+                return firstKey + random.nextInt(keys);
+        }
+    }
+
+    /**
+     * Key of new row to insert, keys of inserted rows are sampled by {@code latest} distribution.
+     *
+     * @return new key
+     */
+    public int nextInsert() {
+        return lastKey.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s keys %d..%d", distribution.name().toLowerCase(), firstKey, lastKey.get());
+    }
+
+    /**
+     * Key access distribution.
+     */
+    public enum Distribution {
+        /** Every key is equally likely. */
+        UNIFORM,
+        /** Lowest keys are the most popular ones. */
+        ZIPFIAN,
+        /** Fraction of keys receives most of the samples. */
+        HOTSPOT,
+        /** Most recently inserted keys are the most popular ones. */
+        LATEST;
+
+        static Distribution parse(final String value) {
+            return Distribution.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Zipfian distribution of ranks {@code 0 .. n - 1}, rank {@code 0} is the most popular one.
+     * Uses algorithm of Gray et al., Quickly Generating Billion-Record Synthetic Databases,
+     * zeta constant is computed once in {@code O(n)} time.
+     */
+    static final class Zipfian {
+
+        private final long n;
+        private final double theta;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+
+        /**
+         * Creates zipfian distribution.
+         *
+         * @param n number of ranks
+         * @param theta exponent, between {@code 0} and {@code 1} exclusive
+         */
+        Zipfian(final long n, final double theta) {
+            if (theta <= 0 || theta >= 1) {
+                throw new IllegalArgumentException(String.format("Zipfian exponent %f must be between 0 and 1.", theta));
+            }
+            this.n = n;
+            this.theta = theta;
+            this.zetan = zeta(n, theta);
+            this.alpha = 1.0 / (1.0 - theta);
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+        }
+
+        /**
+         * Rank for uniformly distributed value.
+         *
+         * @param u value from {@code [0, 1)}
+         * @return rank
+         */
+        long sample(final double u) {
+            final double uz = u * zetan;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, theta)) {
+                return Math.min(1, n - 1);
+            }
+            return Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(final long n, final double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Recent latency percentile of statement executions.
+ * <p>Latencies are recorded into HdrHistogram {@link Recorder} without locking. Percentile
+ * is recomputed from the interval histogram once per refresh interval by the first caller
+ * which finds it stale, other callers use last computed value. Interval with less than
+ * minimal number of samples keeps previous value, until then fallback value is used.
+ */
+public final class LatencyPercentile {
+
+    // Minimal number of samples in refresh interval to recompute the percentile
+    private static final long MIN_SAMPLES = 100;
+
+    private final double percentile;
+    private final long minMicros;
+    private final long refreshNanos;
+    private final Recorder recorder;
+    private final ReentrantLock refreshLock;
+    private Histogram interval;
+    private volatile long nextRefresh;
+    private volatile long valueMicros;
+
+    /**
+     * Creates an instance of latency percentile.
+     *
+     * @param percentile percentile to compute, e.g. {@code 99.0}
+     * @param min minimal returned value
+     * @param fallback value returned until enough samples were recorded
+     * @param refresh percentile refresh interval
+     */
+    public LatencyPercentile(final double percentile, final Duration min, final Duration fallback, final Duration refresh) {
+        this.percentile = percentile;
+        this.minMicros = TimeUnit.NANOSECONDS.toMicros(min.toNanos());
+        this.refreshNanos = refresh.toNanos();
+        this.recorder = new Recorder(2);
+        this.refreshLock = new ReentrantLock();
+        this.interval = null;
+        this.nextRefresh = System.nanoTime() + refreshNanos;
+        this.valueMicros = Math.max(minMicros, TimeUnit.NANOSECONDS.toMicros(fallback.toNanos()));
+    }
+
+    /**
+     * Record execution latency.
+     *
+     * @param latencyNanos latency in nanoseconds
+     */
+    public void record(final long latencyNanos) {
+        recorder.recordValue(Math.max(0, TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    /**
+     * Current percentile value.
+     *
+     * @return percentile value in microseconds
+     */
+    public long micros() {
+        final long now = System.nanoTime();
+        if (now - nextRefresh >= 0 && refreshLock.tryLock()) {
+            try {
+                interval = recorder.getIntervalHistogram(interval);
+                if (interval.getTotalCount() >= MIN_SAMPLES) {
+                    valueMicros = Math.max(minMicros, interval.getValueAtPercentile(percentile));
+                }
+                nextRefresh = now + refreshNanos;
+            } finally {
+                refreshLock.unlock();
+            }
+        }
+        return valueMicros;
+    }
+
+    /**
+     * Current percentile value rounded up to milliseconds.
+     *
+     * @return percentile value in milliseconds
+     */
+    public long millis() {
+        return (micros() + 999) / 1000;
+    }
+
+}
@@ -15,51 +15,92 @@
  */
 package com.oracle.test.nativeimage;
 
-import java.util.Map;
-import java.util.logging.Level;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonValue;
 
+import io.helidon.common.http.Http;
 import io.helidon.common.http.MediaType;
-import io.helidon.tests.integration.tools.service.RemoteTestException;
 import io.helidon.webserver.Routing;
 import io.helidon.webserver.ServerRequest;
 import io.helidon.webserver.ServerResponse;
 import io.helidon.webserver.Service;
 import io.helidon.webserver.WebServer;
 
-import com.datastax.oss.driver.api.core.CqlSession;
-import com.datastax.oss.driver.api.core.cql.PreparedStatement;
-
-import static io.helidon.tests.integration.tools.service.AppResponse.exceptionStatus;
-import static io.helidon.tests.integration.tools.service.AppResponse.okStatus;
+import static io.helidon.tests.integration.tools.service.AppResponseWriter.sendOk;
 
 /**
  * Web resource to handle web server life cycle.
+ * <p>{@code /init} creates missing schema and seeds the dataset, {@code /reset} seeds the dataset again
+ * between test runs. Schema statements are conditional, so existing schema is not changed and the driver
+ * does not wait for schema agreement. Dataset is not seeded when stored one is current, see {@link Dataset},
+ * otherwise table is cleared without dropping it and loaded by {@link BulkLoader}. Request parameter
+ * {@code force=true} of {@code /reset} seeds current dataset too. Probes {@code /live} and {@code /ready}
+ * are answered from the last {@link HealthChecker} result.
  */
 public class LifeCycleService implements Service {
 
+    private static final Logger LOGGER = Logger.getLogger(LifeCycleService.class.getName());
+
     private WebServer server;
-    private final CqlSession session;
-    private final Map<String,String> statements;
+    private final StatementRegistry statements;
+    private final HandlerMode mode;
+    private final WriteBuffer writeBuffer;
+    private final EndpointMetrics endpoints;
+    private final HealthChecker health;
+    private final BulkLoader loader;
+    private final Dataset dataset;
+    private final Runnable invalidateCache;
+    private final GracefulShutdown shutdown;
 
     /**
      * Creates an instance of web service to handle web server life cycle.
+     * Database session is taken from statements registry when it gets attached.
      *
-     * @param session Cassandra database session
-     * @param statements configured statements
+     * @param statements configured statements registry
+     * @param mode request handlers mode
+     * @param writeBuffer write-behind buffer flushed before dataset is seeded
+     * @param endpoints endpoint metrics
+     * @param health cached liveness and readiness
+     * @param loader loader of initial dataset
+     * @param dataset seeded dataset state
+     * @param invalidateCache drops rows cached by the application when dataset was seeded
+     * @param shutdown draining shutdown sequence run on exit
      */
-    public LifeCycleService(final CqlSession session, final Map<String,String> statements) {
-        this.session = session;
+    public LifeCycleService(final StatementRegistry statements,
+                            final HandlerMode mode,
+                            final WriteBuffer writeBuffer,
+                            final EndpointMetrics endpoints,
+                            final HealthChecker health,
+                            final BulkLoader loader,
+                            final Dataset dataset,
+                            final Runnable invalidateCache,
+                            final GracefulShutdown shutdown) {
         this.statements = statements;
+        this.mode = mode;
+        this.writeBuffer = writeBuffer;
+        this.endpoints = endpoints;
+        this.health = health;
+        this.loader = loader;
+        this.dataset = dataset;
+        this.invalidateCache = invalidateCache;
+        this.shutdown = shutdown;
     }
 
     @Override
     public void update(Routing.Rules rules) {
         rules
-                .get("/init", this::init)
-                .get("/exit", this::exit);
+                .get("/init", shutdown::guard, endpoints.timed("lifecycle.init", this::init))
+                .get("/reset", shutdown::guard, endpoints.timed("lifecycle.reset", this::reset))
+                .get("/live", this::live)
+                .get("/ready", this::ready)
+                .get("/exit", endpoints.timed("lifecycle.exit", this::exit));
     }
 
     public void setServer(final WebServer server) {
@@ -68,76 +109,121 @@ public class LifeCycleService implements Service {
 
     /**
      * Initializes database schema and content.
+     * Waits for database session when it is still being connected. Response contains seeding summary.
      *
      * @param request not used
      * @param response where to send server termination message.
      * @return {@code null} value
      */
     private void init(final ServerRequest request, final ServerResponse response) {
-        try {
-            session.execute(statements.get("create-keyspace"));
-            session.execute(statements.get("use-keyspace"));
-            session.execute(statements.get("create-table"));
-            PreparedStatement ps = session.prepare(statements.get("insert"));
-            Pokemon.POKEMNONS.forEach(
-                    (id, pokemon) -> session.execute(ps.bind(id, pokemon.getName(), pokemon.getType())));
-            response.send(okStatus(JsonValue.NULL));
-        } catch (Throwable t) {
-            response.send(exceptionStatus(
-                    new RemoteTestException(String.format("Could not initialize database: %s", t.getMessage()))));
-        }
+        CassandraService.send(request, response, "Could not initialize database", mode.apply(
+                statements.attached()
+                        .thenCompose(session -> session.executeAsync(statements.statement("create-keyspace"))
+                                .thenCompose(rs -> session.executeAsync(statements.statement("use-keyspace")))
+                                .thenCompose(rs -> session.executeAsync(statements.statement("create-table")))
+                                .thenCompose(rs -> session.executeAsync(statements.statement("create-meta-table"))))
+                        .thenCompose(rs -> seed(false))));
     }
 
     /**
-     * Terminates web server.
+     * Seeds the dataset again unless it is current.
      *
-     * @param request not used
-     * @param response where to send server termination message.
-     * @return {@code null} value
+     * @param request may contain {@code force} parameter
+     * @param response where to send seeding summary
      */
-    private void exit(final ServerRequest request, final ServerResponse response) {
-        session.close();
-        response.headers().contentType(MediaType.TEXT_PLAIN);
-        response.send("Testing web server shutting down.");
-        ExitThread.start(server);
+    private void reset(final ServerRequest request, final ServerResponse response) {
+        final boolean force = request.queryParams().first("force").map(Boolean::parseBoolean).orElse(false);
+        CassandraService.send(request, response, "Could not reset database", mode.apply(
+                statements.attached().thenCompose(session -> seed(force))));
     }
 
-    /**
-     * Shut down web server after short delay.
-     */
-    private static final class ExitThread implements Runnable {
+    // Pending buffered writes are flushed first, so they can't modify seeded dataset.
+    private CompletionStage<JsonValue> seed(final boolean force) {
+        final long start = System.nanoTime();
+        return writeBuffer.flushPending()
+                .thenCompose(v -> {
+                    final String checksum = loader.checksum();
+                    return (force ? CompletableFuture.completedFuture(false) : dataset.isCurrent(checksum))
+                            .thenCompose(current -> current
+                                    ? CompletableFuture.completedFuture(seeded(start, checksum, null))
+                                    : clearAndLoad(checksum).thenApply(summary -> seeded(start, checksum, summary)));
+                });
+    }
 
-        private static final Logger LOGGER = Logger.getLogger(ExitThread.class.getName());
+    // Dataset is marked as being reset first, so failed reset is never taken as current dataset.
+    private CompletionStage<WindowedWriter.Summary> clearAndLoad(final String checksum) {
+        return dataset.resetting()
+                .thenCompose(v -> loader.clear(statements))
+                .thenRun(invalidateCache)
+                .thenCompose(v -> loader.load(statements.handle("insert")))
+                .thenCompose(summary -> {
+                    invalidateCache.run();
+                    return summary.failed() > 0
+                            ? CompletableFuture.completedFuture(summary)
+                            : dataset.loaded(checksum, summary.written()).thenApply(v -> summary);
+                });
+    }
 
-        /**
-         * Starts application exit thread.
-         *
-         * @param server web server instance to shut down
-         */
-        public static final void start(final WebServer server) {
-            new Thread(new ExitThread(server)).start();
+    private static JsonObject seeded(final long start, final String checksum, final WindowedWriter.Summary summary) {
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOGGER.info(() -> summary == null
+                ? String.format("Dataset is current, seeding skipped in %d ms", elapsed)
+                : String.format("Dataset seeded in %d ms: %s", elapsed, summary));
+        final JsonObjectBuilder job = Json.createObjectBuilder()
+                .add("seeded", summary != null)
+                .add("checksum", checksum)
+                .add("elapsed", elapsed);
+        if (summary != null) {
+            job.add("load", summary.toJson());
         }
+        return job.build();
+    }
 
-        private final WebServer server;
-
-        private ExitThread(final WebServer server) {
-            this.server = server;
+    /**
+     * Reports liveness from the last background health check, database is not reached.
+     * Status is {@code 503} when health checks stopped completing.
+     *
+     * @param request not used
+     * @param response where to send liveness
+     */
+    private void live(final ServerRequest request, final ServerResponse response) {
+        if (!health.isLive()) {
+            response.status(Http.Status.SERVICE_UNAVAILABLE_503);
         }
+        sendOk(response, health.toJson());
+    }
 
-        /**
-         * Wait few seconds and terminate web server.
-         */
-        @Override
-        public void run() {
-            try {
-                Thread.sleep(3000);
-            } catch (InterruptedException ie) {
-                LOGGER.log(Level.WARNING, ie, () -> String.format("Thread was interrupted: %s", ie.getMessage()));
-            } finally {
-                server.shutdown();
-            }
+    /**
+     * Reports readiness, startup phase durations and database state from the last background health check,
+     * database is not reached. Status is {@code 503} until both database session and web server are ready
+     * and when database session has no healthy connection.
+     *
+     * @param request not used
+     * @param response where to send readiness
+     */
+    private void ready(final ServerRequest request, final ServerResponse response) {
+        if (!health.isReady()) {
+            response.status(Http.Status.SERVICE_UNAVAILABLE_503);
         }
+        sendOk(response, health.toJson());
+    }
 
+    /**
+     * Terminates web server.
+     * Requests in flight are drained and database session is closed before the response is sent,
+     * web server is stopped as soon as the response was sent. Shutdown is never awaited by blocking
+     * handler mode, it would block web server thread of the requests being drained.
+     *
+     * @param request not used
+     * @param response where to send server termination message.
+     * @return {@code null} value
+     */
+    private void exit(final ServerRequest request, final ServerResponse response) {
+        shutdown.shutdown().whenComplete((v, t) -> {
+            response.headers().contentType(MediaType.TEXT_PLAIN);
+            response.send("Testing web server shutting down.");
+            response.whenSent().whenComplete((res, sendFailure) -> server.shutdown());
+        });
     }
 
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.logging.Logger;
+
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+/**
+ * Concurrent single partition reads of multiple keys.
+ * <p>Each distinct key is bound to the prepared statement and all reads are started at once.
+ * Bound statement carries the routing key of its partition, so token aware load balancing
+ * of the driver sends each read to a replica of that partition. Total latency is close
+ * to the slowest single read.
+ * <p>Result contains one item for each requested key in request order: the row, {@code {"id":N,"missing":true}}
+ * when the row does not exist or {@code {"id":N,"error":"..."}} when the read failed.
+ */
+final class MultiGet {
+
+    private static final Logger LOGGER = Logger.getLogger(MultiGet.class.getName());
+
+    private static final byte[] ID_PREFIX = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MISSING_SUFFIX = ",\"missing\":true}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR_PREFIX = ",\"error\":".getBytes(StandardCharsets.US_ASCII);
+
+    private final StatementRegistry.Handle stmt;
+
+    /**
+     * Creates an instance of multiple keys reader.
+     *
+     * @param stmt single partition select statement with partition key as the only bind marker
+     */
+    MultiGet(final StatementRegistry.Handle stmt) {
+        this.stmt = stmt;
+    }
+
+    /**
+     * Read rows of all provided keys.
+     *
+     * @param ids keys to read
+     * @param timing request timing marked when all rows were read and when response array was encoded
+     * @return UTF-8 encoded JSON array of rows in the order of provided keys
+     */
+    CompletionStage<byte[]> select(final List<Integer> ids, final EndpointMetrics.Timing timing) {
+        return stmt.prepared().thenCompose(ps -> select(ps, ids, timing));
+    }
+
+    private CompletionStage<byte[]> select(final PreparedStatement ps,
+                                           final List<Integer> ids,
+                                           final EndpointMetrics.Timing timing) {
+        final Map<Integer, CompletableFuture<byte[]>> results = new HashMap<>(ids.size());
+        ids.forEach(id -> results.computeIfAbsent(id, key -> stmt.execute(ps.bind(key))
+                .thenApply(rs -> {
+                    final Row row = rs.one();
+                    return row == null ? missing(key) : stmt.encoder(row).encode(row);
+                })
+                .exceptionally(t -> error(key, CassandraService.unwrap(t).getMessage()))
+                .toCompletableFuture()));
+        LOGGER.finest(() -> String.format("Reading %d distinct keys", results.size()));
+        return CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    timing.cassandra();
+                    final JsonOutput out = new JsonOutput(64 * ids.size());
+                    out.write('[');
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (i > 0) {
+                            out.write(',');
+                        }
+                        out.write(results.get(ids.get(i)).join());
+                    }
+                    final byte[] content = out.write(']').toByteArray();
+                    timing.encoded();
+                    return content;
+                });
+    }
+
+    private static byte[] missing(final int id) {
+        return new JsonOutput(32)
+                .write(ID_PREFIX)
+                .writeInt(id)
+                .write(MISSING_SUFFIX)
+                .toByteArray();
+    }
+
+    private static byte[] error(final int id, final String message) {
+        return new JsonOutput(64)
+                .write(ID_PREFIX)
+                .writeInt(id)
+                .write(ERROR_PREFIX)
+                .writeString(message == null ? "null" : message)
+                .write('}')
+                .toByteArray();
+    }
+
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+
+import javax.json.Json;
+import javax.json.JsonException;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+
+import io.helidon.common.http.DataChunk;
+
+/**
+ * Subscriber of newline delimited JSON request content.
+ * <p>Rows are parsed as content chunks arrive and passed to {@link WindowedWriter}. Next chunk
+ * is requested only when current chunk was fully processed and writer window has room for next row,
+ * so request content is read no faster than rows are written. Memory use is bounded by single chunk
+ * and single line.
+ */
+final class NdjsonSubscriber implements Flow.Subscriber<DataChunk> {
+
+    private static final int INITIAL_LINE_SIZE = 256;
+    private static final String[] POKEMON_FIELDS = {"id", "name", "type"};
+
+    private final WindowedWriter writer;
+    private final Function<JsonObject, Object[]> binder;
+    private final int maxLineLength;
+    private final CompletableFuture<WindowedWriter.Summary> result;
+    private Flow.Subscription subscription;
+    // Line being read
+    private byte[] line;
+    private int lineLength;
+    private long lineNumber;
+    private boolean lineTooLong;
+    // Chunk being processed, null when waiting for next chunk
+    private DataChunk chunk;
+    private ByteBuffer[] buffers;
+    private int bufferIndex;
+    // Content was completed by the publisher
+    private boolean complete;
+    // Result is being completed, no more content is processed
+    private boolean terminated;
+
+    /**
+     * Creates an instance of NDJSON content subscriber.
+     *
+     * @param writer writer of parsed rows
+     * @param binder maps parsed row to statement values
+     * @param maxLineLength maximum length of single line in bytes
+     */
+    NdjsonSubscriber(final WindowedWriter writer, final Function<JsonObject, Object[]> binder, final int maxLineLength) {
+        this.writer = writer;
+        this.binder = binder;
+        this.maxLineLength = maxLineLength;
+        this.result = new CompletableFuture<>();
+        this.line = new byte[Math.min(INITIAL_LINE_SIZE, maxLineLength)];
+        this.lineLength = 0;
+        this.lineNumber = 0;
+        this.lineTooLong = false;
+        this.chunk = null;
+        this.complete = false;
+        this.terminated = false;
+    }
+
+    /**
+     * Rows summary, completed when whole content was written.
+     *
+     * @return writer summary
+     */
+    CompletionStage<WindowedWriter.Summary> result() {
+        return result;
+    }
+
+    /**
+     * Statement values of pokemon row with {@code id}, {@code name} and {@code type} fields.
+     *
+     * @param row parsed row
+     * @return values of insert statement
+     * @throws IllegalArgumentException when a field is missing or null, or id is not an {@code int} value
+     * @throws ClassCastException when a field has wrong type
+     */
+    static Object[] pokemonValues(final JsonObject row) {
+        for (String field : POKEMON_FIELDS) {
+            if (!row.containsKey(field) || row.isNull(field)) {
+                throw new IllegalArgumentException(String.format("Missing field %s", field));
+            }
+        }
+        final JsonNumber id = row.getJsonNumber("id");
+        try {
+            // Fractional or out of range id would be truncated to other row's key.
+            return new Object[] {id.intValueExact(), row.getString("name"), row.getString("type")};
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException(String.format("Invalid id %s", id), ex);
+        }
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(final DataChunk item) {
+        if (terminated) {
+            item.release();
+            return;
+        }
+        chunk = item;
+        buffers = item.data();
+        bufferIndex = 0;
+        process();
+    }
+
+    @Override
+    public synchronized void onError(final Throwable throwable) {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        releaseChunk();
+        writer.finish().whenComplete((summary, t) -> result.completeExceptionally(throwable));
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        complete = true;
+        // Chunk processing may be waiting for writer permit, it will finish the content later.
+        if (chunk == null) {
+            finish();
+        }
+    }
+
+    // Process current chunk until it's consumed or writer window is full.
+    private synchronized void process() {
+        // Chunk was released by error while waiting for writer permit.
+        if (terminated) {
+            return;
+        }
+        while (bufferIndex < buffers.length) {
+            final ByteBuffer buffer = buffers[bufferIndex];
+            while (buffer.hasRemaining()) {
+                final byte b = buffer.get();
+                if (b == '\n') {
+                    final CompletionStage<Void> permit = line();
+                    if (!permit.toCompletableFuture().isDone()) {
+                        permit.thenRun(this::process).exceptionally(this::failed);
+                        return;
+                    }
+                } else {
+                    append(b);
+                }
+            }
+            bufferIndex++;
+        }
+        releaseChunk();
+        if (complete) {
+            finish();
+        } else {
+            subscription.request(1);
+        }
+    }
+
+    // Last line may not be terminated by new line.
+    private void finish() {
+        if (terminated) {
+            return;
+        }
+        terminated = true;
+        if (lineLength > 0 || lineTooLong) {
+            line().thenRun(() -> writer.finish().thenAccept(result::complete));
+        } else {
+            writer.finish().thenAccept(result::complete);
+        }
+    }
+
+    private void append(final byte b) {
+        if (lineTooLong) {
+            return;
+        }
+        if (lineLength == line.length) {
+            if (lineLength >= maxLineLength) {
+                lineTooLong = true;
+                return;
+            }
+            line = Arrays.copyOf(line, Math.min(maxLineLength, 2 * line.length));
+        }
+        line[lineLength++] = b;
+    }
+
+    // Write completed line, returns writer permit.
+    private CompletionStage<Void> line() {
+        lineNumber++;
+        try {
+            if (lineTooLong) {
+                writer.reject(String.format("Line %d exceeds %d bytes", lineNumber, maxLineLength));
+                return CompletableFuture.completedFuture(null);
+            }
+            if (isBlank()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            final JsonObject row;
+            try (JsonReader reader = Json.createReader(new ByteArrayInputStream(line, 0, lineLength))) {
+                row = reader.readObject();
+            }
+            return writer.write(binder.apply(row));
+        } catch (JsonException | ClassCastException | IllegalArgumentException ex) {
+            writer.reject(String.format("Line %d: %s", lineNumber, ex.getMessage()));
+            return CompletableFuture.completedFuture(null);
+        } finally {
+            lineLength = 0;
+            lineTooLong = false;
+        }
+    }
+
+    private boolean isBlank() {
+        for (int i = 0; i < lineLength; i++) {
+            if (!Character.isWhitespace(line[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Unexpected failure of chunk processing continued from writer permit, content is not read anymore.
+    private Void failed(final Throwable throwable) {
+        subscription.cancel();
+        onError(throwable);
+        return null;
+    }
+
+    private void releaseChunk() {
+        if (chunk != null) {
+            chunk.release();
+            chunk = null;
+            buffers = null;
+        }
+    }
+
+}
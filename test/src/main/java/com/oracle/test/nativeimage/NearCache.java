@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+/**
+ * Bounded in-process cache of database reads.
+ * <p>Eviction follows W-TinyLFU design: new entries enter small LRU window, entries leaving
+ * the window compete for admission to main segmented LRU (probation and protected segments)
+ * with its eviction victim, and the one with higher estimated access frequency stays.
+ * Frequencies are estimated by {@link FrequencySketch}, so one-hit wonders don't flush popular
+ * entries. Cache is bounded by number of entries and by estimated size of values in bytes.
+ * <p>Values loaded by reads which overlapped with invalidation are not stored: caller takes
+ * {@link #stamp()} before the read and passes it to {@link #put(Object, Object, long)}.
+ *
+ * @param <K> type of the key
+ * @param <V> type of the value
+ */
+public final class NearCache<K, V> {
+
+    private static final Logger LOGGER = Logger.getLogger(NearCache.class.getName());
+
+    // Estimated memory overhead of single entry in bytes
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final boolean enabled;
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+    private final long maxBytes;
+    private final ToIntFunction<V> weigher;
+    private final FrequencySketch sketch;
+    private final Map<K, Entry<V>> entries;
+    // LRU segments in access order, eldest entry first
+    private final LinkedHashMap<K, Entry<V>> window;
+    private final LinkedHashMap<K, Entry<V>> probation;
+    private final LinkedHashMap<K, Entry<V>> protectedSegment;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    // Cache state, guarded by this
+    private long bytes;
+    private long invalidations;
+
+    private NearCache(final boolean enabled, final int maxEntries, final long maxBytes, final ToIntFunction<V> weigher) {
+        this.enabled = enabled && maxEntries > 0 && maxBytes > 0;
+        this.windowMax = Math.max(1, maxEntries / 100);
+        this.mainMax = Math.max(1, maxEntries - windowMax);
+        this.protectedMax = Math.max(1, mainMax * 4 / 5);
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+        this.sketch = new FrequencySketch(this.enabled ? maxEntries : 16);
+        this.entries = new HashMap<>();
+        this.window = new LinkedHashMap<>(16, 0.75f, true);
+        this.probation = new LinkedHashMap<>(16, 0.75f, true);
+        this.protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        this.bytes = 0;
+        this.invalidations = 0;
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.hits = metrics.counter("cache.hits");
+        this.misses = metrics.counter("cache.misses");
+        this.evictions = metrics.counter("cache.evictions");
+        metrics.register(
+                Metadata.builder()
+                        .withName("cache.size")
+                        .withDescription("Number of cached entries")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Integer>) this::size);
+        metrics.register(
+                Metadata.builder()
+                        .withName("cache.bytes")
+                        .withDescription("Estimated size of cached entries")
+                        .withType(MetricType.GAUGE)
+                        .withUnit(MetricUnits.BYTES)
+                        .build(),
+                (Gauge<Long>) this::bytes);
+    }
+
+    /**
+     * Creates near cache from {@code app.cache} configuration node.
+     *
+     * @param config cache configuration
+     * @param weigher estimated size of the value in bytes
+     * @param <K> type of the key
+     * @param <V> type of the value
+     * @return near cache, disabled cache never returns cached value
+     */
+    public static <K, V> NearCache<K, V> create(final Config config, final ToIntFunction<V> weigher) {
+        final boolean enabled = config.get("enabled").asBoolean().orElse(false);
+        final int maxEntries = config.get("max-entries").asInt().orElse(10_000);
+        final long maxBytes = config.get("max-bytes").asLong().orElse(16L * 1024 * 1024);
+        LOGGER.info(() -> String.format("Near cache enabled: %b, max entries: %d, max bytes: %d",
+                                        enabled, maxEntries, maxBytes));
+        return new NearCache<>(enabled, maxEntries, maxBytes, weigher);
+    }
+
+    /**
+     * Returns cached value and records access of the key.
+     *
+     * @param key cache key
+     * @return cached value or {@code null} when key is not cached
+     */
+    public V get(final K key) {
+        if (!enabled) {
+            return null;
+        }
+        final V value;
+        synchronized (this) {
+            sketch.increment(key);
+            final Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                value = null;
+            } else {
+                touch(key, entry);
+                value = entry.value;
+            }
+        }
+        if (value == null) {
+            misses.inc();
+        } else {
+            hits.inc();
+        }
+        return value;
+    }
+
+    /**
+     * Invalidation stamp to be passed to {@link #put(Object, Object, long)} after the value was read.
+     *
+     * @return current invalidation stamp
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * Store value read from database.
+     * Value is not stored when cache was invalidated since stamp was taken.
+     *
+     * @param key cache key
+     * @param value value to store
+     * @param stamp invalidation stamp taken before the value was read
+     */
+    public void put(final K key, final V value, final long stamp) {
+        if (!enabled) {
+            return;
+        }
+        final int weight = weigher.applyAsInt(value) + ENTRY_OVERHEAD;
+        synchronized (this) {
+            if (stamp != invalidations) {
+                return;
+            }
+            final Entry<V> current = entries.get(key);
+            if (current != null) {
+                bytes += weight - current.weight;
+                current.value = value;
+                current.weight = weight;
+                touch(key, current);
+            } else {
+                final Entry<V> entry = new Entry<>(value, weight, Segment.WINDOW);
+                entries.put(key, entry);
+                window.put(key, entry);
+                bytes += weight;
+                if (window.size() > windowMax) {
+                    admit();
+                }
+            }
+            while (bytes > maxBytes && !entries.isEmpty()) {
+                evict(eldest());
+            }
+        }
+    }
+
+    /**
+     * Remove key from the cache. Must be called after the key was modified in the database.
+     *
+     * @param key cache key
+     */
+    public void invalidate(final K key) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            invalidations++;
+            remove(key);
+        }
+    }
+
+    /**
+     * Remove all keys from the cache.
+     */
+    public void invalidateAll() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (this) {
+            invalidations++;
+            entries.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Number of cached entries.
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Estimated size of cached entries in bytes.
+     *
+     * @return size of entries
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    // Entry leaving the window competes with main space victim. Caller must hold the lock.
+    private void admit() {
+        final K candidate = first(window);
+        final Entry<V> candidateEntry = window.remove(candidate);
+        if (probation.size() + protectedSegment.size() < mainMax) {
+            candidateEntry.segment = Segment.PROBATION;
+            probation.put(candidate, candidateEntry);
+            return;
+        }
+        final K victim = probation.isEmpty() ? first(protectedSegment) : first(probation);
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            evict(victim);
+            candidateEntry.segment = Segment.PROBATION;
+            probation.put(candidate, candidateEntry);
+        } else {
+            entries.remove(candidate);
+            bytes -= candidateEntry.weight;
+            evictions.inc();
+        }
+    }
+
+    // Update LRU position of accessed entry. Caller must hold the lock.
+    private void touch(final K key, final Entry<V> entry) {
+        switch (entry.segment) {
+            case WINDOW:
+                window.get(key);
+                break;
+            case PROBATION:
+                probation.remove(key);
+                entry.segment = Segment.PROTECTED;
+                protectedSegment.put(key, entry);
+                if (protectedSegment.size() > protectedMax) {
+                    final K demoted = first(protectedSegment);
+                    final Entry<V> demotedEntry = protectedSegment.remove(demoted);
+                    demotedEntry.segment = Segment.PROBATION;
+                    probation.put(demoted, demotedEntry);
+                }
+                break;
+            case PROTECTED:
+                protectedSegment.get(key);
+                break;
+            default:
+                throw new IllegalStateException(String.format("Unknown cache segment %s", entry.segment));
+        }
+    }
+
+    // Eviction candidate when size in bytes is exceeded. Caller must hold the lock.
+    private K eldest() {
+        if (!probation.isEmpty()) {
+            return first(probation);
+        }
+        if (!protectedSegment.isEmpty()) {
+            return first(protectedSegment);
+        }
+        return first(window);
+    }
+
+    // Caller must hold the lock.
+    private void evict(final K key) {
+        if (remove(key)) {
+            evictions.inc();
+        }
+    }
+
+    // Caller must hold the lock.
+    private boolean remove(final K key) {
+        final Entry<V> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        switch (entry.segment) {
+            case WINDOW:
+                window.remove(key);
+                break;
+            case PROBATION:
+                probation.remove(key);
+                break;
+            default:
+                protectedSegment.remove(key);
+        }
+        bytes -= entry.weight;
+        return true;
+    }
+
+    private static <K> K first(final LinkedHashMap<K, ?> segment) {
+        final Iterator<K> keys = segment.keySet().iterator();
+        return keys.hasNext() ? keys.next() : null;
+    }
+
+    private enum Segment {
+        WINDOW,
+        PROBATION,
+        PROTECTED
+    }
+
+    private static final class Entry<V> {
+
+        private V value;
+        private int weight;
+        private Segment segment;
+
+        private Entry(final V value, final int weight, final Segment segment) {
+            this.value = value;
+            this.weight = weight;
+            this.segment = segment;
+        }
+
+    }
+
+}
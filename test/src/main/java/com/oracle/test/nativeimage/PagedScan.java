@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.logging.Logger;
+
+import io.helidon.common.http.DataChunk;
+import io.helidon.common.reactive.BufferedEmittingPublisher;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.PagingState;
+import com.datastax.oss.driver.api.core.cql.Row;
+
+/**
+ * Streaming scan of statement result pages.
+ * <p>Each page is fetched by separate execution continuing from paging state of previous page,
+ * so page size can follow observed row size and keep response chunks within configured byte budget.
+ * Rows are encoded by {@link RowEncoder} of the statement directly into the page chunk.
+ * Next page is fetched while current page is being written, and it's emitted only after current
+ * chunk was released by the web server, so at most two pages are held in memory.
+ * <p>Published content is response data to be sent by {@code AppResponseWriter}:
+ * <pre>
+ * {"rows":[...],"pages":N,"cursor":"..."}
+ * </pre>
+ * Cursor is URL safe Base64 encoded paging state of the next page, or {@code null} when the scan
+ * is complete. Scan stops with cursor of remaining rows when rows limit is reached. Failure after the first page is reported by {@code error} field next to last valid cursor.
+ */
+final class PagedScan {
+
+    private static final Logger LOGGER = Logger.getLogger(PagedScan.class.getName());
+
+    private static final byte[] HEADER = "{\"rows\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PAGES = "],\"pages\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CURSOR = ",\"cursor\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ERROR = ",\"error\":".getBytes(StandardCharsets.UTF_8);
+
+    private final StatementRegistry.Handle stmt;
+    private final Object[] values;
+    private final Settings settings;
+    private final BufferedEmittingPublisher<DataChunk> publisher;
+    // Scan state, accessed by single page processing at a time
+    private int pageSize;
+    private long remaining;
+    private long pages;
+    private boolean headerSent;
+    private boolean empty;
+    private String cursor;
+
+    /**
+     * Creates an instance of streaming scan.
+     *
+     * @param stmt statement to execute
+     * @param values values to bind
+     * @param limit maximum number of rows to return
+     * @param settings scan settings
+     */
+    PagedScan(final StatementRegistry.Handle stmt,
+              final Object[] values,
+              final long limit,
+              final Settings settings) {
+        this.stmt = stmt;
+        this.values = values;
+        this.settings = settings;
+        this.publisher = BufferedEmittingPublisher.create();
+        this.pageSize = settings.pageSize;
+        this.remaining = limit;
+        this.pages = 0;
+        this.headerSent = false;
+        this.empty = true;
+        this.cursor = null;
+    }
+
+    /**
+     * Start the scan. Returned stage is completed when first page is available,
+     * so failure of the first page can still be reported as regular error response.
+     *
+     * @param cursor cursor to resume the scan from or {@code null} to start from the beginning
+     * @param mode request handlers mode applied to the first page
+     * @return response content publisher
+     */
+    CompletionStage<Flow.Publisher<DataChunk>> start(final String cursor, final HandlerMode mode) {
+        final CompletionStage<AsyncResultSet> firstPage;
+        try {
+            final PagingState pagingState = cursor == null ? null : decode(cursor);
+            this.cursor = cursor;
+            firstPage = stmt.executeAsync(bs -> resume(bs, pagingState), values);
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return mode.apply(firstPage).thenApply(rs -> {
+            page(rs);
+            return publisher;
+        });
+    }
+
+    private static PagingState decode(final String cursor) {
+        try {
+            return PagingState.fromBytes(Base64.getUrlDecoder().decode(cursor));
+        } catch (RuntimeException ex) {
+            throw new RemoteTestException(String.format("Invalid cursor %s.", cursor));
+        }
+    }
+
+    // Set first page size and paging state of the cursor.
+    private BoundStatement resume(final BoundStatement bs, final PagingState pagingState) {
+        final BoundStatement pageStmt = bs.setPageSize(nextPageSize());
+        if (pagingState == null) {
+            return pageStmt;
+        }
+        if (!pagingState.matches(pageStmt)) {
+            throw new RemoteTestException("Cursor does not belong to this scan.");
+        }
+        return pageStmt.setPagingState(pagingState.getRawPagingState());
+    }
+
+    // Emit page and continue with next one, failure of the first page fails the start of the scan.
+    private void page(final AsyncResultSet rs) {
+        if (publisher.isCancelled()) {
+            return;
+        }
+        pages++;
+        final JsonOutput out = new JsonOutput(settings.chunkBytes + HEADER.length);
+        if (!headerSent) {
+            out.write(HEADER);
+            headerSent = true;
+        }
+        int rows = 0;
+        for (Row row : rs.currentPage()) {
+            if (!empty) {
+                out.write(',');
+            }
+            stmt.encoder(row).encode(row, out);
+            empty = false;
+            rows++;
+        }
+        remaining -= rows;
+        adapt(rows, out.size());
+        final ByteBuffer pagingState = rs.hasMorePages() ? rs.getExecutionInfo().getPagingState() : null;
+        cursor = pagingState == null
+                ? null
+                : Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        rs.getExecutionInfo().getSafePagingState().toBytes());
+        if (pagingState == null || remaining <= 0) {
+            footer(out, null);
+            publisher.emit(DataChunk.create(true, out.buffer()));
+            publisher.complete();
+            return;
+        }
+        final int nextPageSize = nextPageSize();
+        // Current page is emitted even when next one could not be started, its failure is reported after it.
+        CompletionStage<AsyncResultSet> next;
+        try {
+            next = stmt.executeAsync(bs -> bs.setPageSize(nextPageSize).setPagingState(pagingState), values);
+        } catch (RuntimeException ex) {
+            next = CompletableFuture.failedFuture(ex);
+        }
+        final CompletableFuture<Void> released = new CompletableFuture<>();
+        publisher.emit(DataChunk.create(true, () -> released.complete(null), out.buffer()));
+        released.thenCombine(next, (v, nextPage) -> nextPage)
+                .whenComplete((nextPage, t) -> {
+                    if (t == null) {
+                        nextPage(nextPage);
+                    } else {
+                        failed(t);
+                    }
+                });
+    }
+
+    // Continue with next page, content was already started so any failure is reported in the content.
+    private void nextPage(final AsyncResultSet rs) {
+        try {
+            page(rs);
+        } catch (RuntimeException ex) {
+            failed(ex);
+        }
+    }
+
+    // Adjust page size to keep page within byte budget.
+    private void adapt(final int rows, final int bytes) {
+        if (rows > 0) {
+            final int rowBytes = Math.max(1, bytes / rows);
+            pageSize = Math.max(settings.minPageSize, Math.min(settings.maxPageSize, settings.chunkBytes / rowBytes));
+            LOGGER.finest(() -> String.format("Scan page %d: %d rows, %d bytes, next page size %d",
+                                              pages, rows, bytes, pageSize));
+        }
+    }
+
+    // Last page ends exactly at rows limit.
+    private int nextPageSize() {
+        return (int) Math.min(pageSize, remaining);
+    }
+
+    // Close the content when next page could not be fetched.
+    private void failed(final Throwable t) {
+        if (publisher.isCancelled()) {
+            return;
+        }
+        final JsonOutput out = new JsonOutput(128);
+        footer(out, CassandraService.unwrap(t).getMessage());
+        publisher.emit(DataChunk.create(true, out.buffer()));
+        publisher.complete();
+    }
+
+    private void footer(final JsonOutput out, final String error) {
+        out.write(PAGES).writeLong(pages).write(CURSOR);
+        if (cursor == null) {
+            out.writeNull();
+        } else {
+            out.writeString(cursor);
+        }
+        if (error != null) {
+            out.write(ERROR).writeString(error);
+        }
+        out.write('}');
+    }
+
+    /**
+     * Scan settings from {@code app.scan} configuration node.
+     */
+    static final class Settings {
+
+        private final int pageSize;
+        private final int minPageSize;
+        private final int maxPageSize;
+        private final int chunkBytes;
+
+        /**
+         * Creates an instance of scan settings.
+         *
+         * @param pageSize initial page size
+         * @param minPageSize minimal page size
+         * @param maxPageSize maximal page size
+         * @param chunkBytes target size of single page in bytes
+         */
+        Settings(final int pageSize, final int minPageSize, final int maxPageSize, final int chunkBytes) {
+            this.pageSize = pageSize;
+            this.minPageSize = minPageSize;
+            this.maxPageSize = maxPageSize;
+            this.chunkBytes = chunkBytes;
+        }
+
+    }
+
+}
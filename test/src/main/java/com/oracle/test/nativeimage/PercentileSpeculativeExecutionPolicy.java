@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import com.datastax.oss.driver.api.core.CqlIdentifier;
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.config.DriverOption;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.metadata.Node;
+import com.datastax.oss.driver.api.core.session.Request;
+import com.datastax.oss.driver.api.core.specex.SpeculativeExecutionPolicy;
+import com.datastax.oss.driver.api.core.tracker.RequestTracker;
+
+/**
+ * Speculative execution policy with delay derived from observed latency percentile.
+ * <p>Next execution of idempotent statement is started when previous one did not complete within
+ * configured percentile of recent single node execution latencies of the same execution profile,
+ * so only the slowest executions are hedged. Latencies are recorded by {@link #tracker()}, which must be
+ * registered as session request tracker. Constant {@code delay} option is used until enough latencies
+ * were recorded.
+ * <p>Policy is instantiated by the driver for each execution profile which configures it, latencies
+ * are tracked only for those profiles.
+ */
+public final class PercentileSpeculativeExecutionPolicy implements SpeculativeExecutionPolicy {
+
+    private static final Logger LOGGER = Logger.getLogger(PercentileSpeculativeExecutionPolicy.class.getName());
+
+    // Percentile refresh interval
+    private static final Duration REFRESH = Duration.ofSeconds(1);
+    // Recent latencies of profiles using this policy
+    private static final Map<String, LatencyPercentile> LATENCIES = new ConcurrentHashMap<>();
+    private static final RequestTracker TRACKER = new Tracker();
+
+    private final String profileName;
+    private final int maxExecutions;
+    private final LatencyPercentile latency;
+
+    /**
+     * Creates an instance of speculative execution policy. Called by the driver.
+     *
+     * @param context driver context
+     * @param profileName name of execution profile configuring this policy
+     */
+    public PercentileSpeculativeExecutionPolicy(final DriverContext context, final String profileName) {
+        final DriverExecutionProfile profile = context.getConfig().getProfile(profileName);
+        this.profileName = profileName;
+        this.maxExecutions = profile.getInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX);
+        this.latency = new LatencyPercentile(
+                profile.getDouble(Option.PERCENTILE, 99.0),
+                profile.getDuration(Option.MIN_DELAY, Duration.ofMillis(1)),
+                profile.getDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY),
+                REFRESH);
+        LATENCIES.put(profileName, latency);
+        LOGGER.fine(() -> String.format("Speculative executions of profile %s follow %.1f latency percentile",
+                                        profileName, profile.getDouble(Option.PERCENTILE, 99.0)));
+    }
+
+    /**
+     * Request tracker recording single node execution latencies.
+     *
+     * @return request tracker
+     */
+    public static RequestTracker tracker() {
+        return TRACKER;
+    }
+
+    @Override
+    public long nextExecution(final Node node,
+                              final CqlIdentifier keyspace,
+                              final Request request,
+                              final int runningExecutions) {
+        return runningExecutions < maxExecutions ? latency.millis() : -1;
+    }
+
+    @Override
+    public void close() {
+        LATENCIES.remove(profileName, latency);
+    }
+
+    /**
+     * Driver configuration options of this policy, nested in {@code advanced.speculative-execution-policy}.
+     */
+    public enum Option implements DriverOption {
+        /** Latency percentile used as speculative execution delay. */
+        PERCENTILE("advanced.speculative-execution-policy.percentile"),
+        /** Minimal speculative execution delay. */
+        MIN_DELAY("advanced.speculative-execution-policy.min-delay");
+
+        private final String path;
+
+        Option(final String path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+    }
+
+    // Records latencies of profiles using the policy.
+    private static final class Tracker implements RequestTracker {
+
+        @Override
+        public void onNodeSuccess(final Request request,
+                                  final long latencyNanos,
+                                  final DriverExecutionProfile profile,
+                                  final Node node,
+                                  final String requestLogPrefix) {
+            final LatencyPercentile latency = LATENCIES.get(profile.getName());
+            if (latency != null) {
+                latency.record(latencyNanos);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
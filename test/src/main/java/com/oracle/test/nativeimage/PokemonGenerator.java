@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+
+/**
+ * Deterministic generator of synthetic pokemon rows.
+ * <p>Row is computed from the seed and its id only, so the same seed produces the same rows in any order
+ * and rows are streamed by {@link #source()} without keeping them in memory. Names and types are drawn
+ * from {@code name-cardinality} and {@code type-cardinality} distinct values with {@code uniform}
+ * or {@code zipfian} popularity. Name length is drawn from {@code name-length} {@code min} and {@code max}
+ * with {@code uniform} or {@code normal} distribution, it is never shorter than needed to keep names distinct.
+ */
+public final class PokemonGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(PokemonGenerator.class.getName());
+
+    private static final long DEFAULT_SEED = 42;
+    private static final int DEFAULT_ROWS = 1000;
+    private static final int DEFAULT_NAME_CARDINALITY = 1000;
+    private static final int DEFAULT_MIN_NAME_LENGTH = 4;
+    private static final int DEFAULT_MAX_NAME_LENGTH = 16;
+    private static final double ZIPFIAN_THETA = 0.99;
+    // Mixes row and name index into seed of their random sequences
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final String CONSONANTS = "bcdfghjklmnprstvwz";
+    private static final String VOWELS = "aeiou";
+    // Name index is encoded by two letter syllables, so names of distinct indexes never collide
+    private static final int SYLLABLES = CONSONANTS.length() * VOWELS.length();
+    private static final String[] TYPES = {
+            "normal", "fire", "water", "grass", "electric", "ice", "fighting", "poison", "ground",
+            "flying", "psychic", "bug", "rock", "ghost", "dragon", "dark", "steel", "fairy"
+    };
+
+    private final long seed;
+    private final int firstId;
+    private final int rows;
+    private final Values names;
+    private final Values types;
+    private final int minNameLength;
+    private final int maxNameLength;
+    private final boolean normalNameLength;
+    // Number of syllables encoding name index
+    private final int nameDigits;
+
+    private PokemonGenerator(final long seed,
+                             final int firstId,
+                             final int rows,
+                             final Values names,
+                             final Values types,
+                             final int minNameLength,
+                             final int maxNameLength,
+                             final boolean normalNameLength) {
+        if (rows < 0 || minNameLength < 1 || maxNameLength < minNameLength) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid generator rows %d or name length %d..%d.", rows, minNameLength, maxNameLength));
+        }
+        this.seed = seed;
+        this.firstId = firstId;
+        this.rows = rows;
+        this.names = names;
+        this.types = types;
+        this.minNameLength = minNameLength;
+        this.maxNameLength = maxNameLength;
+        this.normalNameLength = normalNameLength;
+        int digits = 1;
+        for (long capacity = SYLLABLES; capacity < names.cardinality; capacity *= SYLLABLES) {
+            digits++;
+        }
+        this.nameDigits = digits;
+    }
+
+    /**
+     * Creates generator from configuration node.
+     *
+     * @param config generator configuration
+     * @return pokemon generator
+     */
+    public static PokemonGenerator create(final Config config) {
+        final long seed = config.get("seed").asLong().orElse(DEFAULT_SEED);
+        final int firstId = config.get("first-id").asInt().orElse(1);
+        final int rows = config.get("rows").asInt().orElse(DEFAULT_ROWS);
+        final Values names = new Values(
+                config.get("name-cardinality").asInt().orElse(DEFAULT_NAME_CARDINALITY),
+                zipfian(config.get("name-distribution")));
+        final Values types = new Values(
+                config.get("type-cardinality").asInt().orElse(TYPES.length),
+                zipfian(config.get("type-distribution")));
+        final int minNameLength = config.get("name-length.min").asInt().orElse(DEFAULT_MIN_NAME_LENGTH);
+        final int maxNameLength = config.get("name-length.max").asInt().orElse(DEFAULT_MAX_NAME_LENGTH);
+        final boolean normalNameLength = config.get("name-length.distribution").asString()
+                .map(PokemonGenerator::parseLengthDistribution)
+                .orElse(false);
+        LOGGER.info(() -> String.format(
+                "Pokemon generator seed: %d, rows: %d, names: %d, types: %d, name length: %d..%d",
+                seed, rows, names.cardinality, types.cardinality, minNameLength, maxNameLength));
+        return new PokemonGenerator(seed, firstId, rows, names, types, minNameLength, maxNameLength, normalNameLength);
+    }
+
+    /**
+     * Number of generated rows.
+     *
+     * @return number of rows
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Id of the first generated row, ids of rows are consecutive.
+     *
+     * @return first row id
+     */
+    public int firstId() {
+        return firstId;
+    }
+
+    /**
+     * Generate row with given id.
+     *
+     * @param id row id
+     * @return generated row
+     */
+    public Pokemon row(final int id) {
+        final SplittableRandom random = new SplittableRandom(seed ^ (id * GOLDEN_GAMMA));
+        final int name = names.sample(random);
+        final int type = types.sample(random);
+        return new Pokemon(id, name(name), type < TYPES.length ? TYPES[type] : "type" + type);
+    }
+
+    /**
+     * Rows streamed in id order as bulk loader source.
+     *
+     * @return source of generated rows
+     */
+    public BulkLoader.Source source() {
+        return new BulkLoader.Source() {
+            private int next = 0;
+
+            @Override
+            public Object[] next() {
+                if (next >= rows) {
+                    return null;
+                }
+                final Pokemon pokemon = row(firstId + next++);
+                return new Object[] {pokemon.getId(), pokemon.getName(), pokemon.getType()};
+            }
+        };
+    }
+
+    /**
+     * Generator settings, generators with the same settings generate the same rows.
+     *
+     * @return generator settings
+     */
+    @Override
+    public String toString() {
+        return String.format("seed=%d first-id=%d rows=%d names=%d%s types=%d%s name-length=%d..%d%s",
+                             seed, firstId, rows,
+                             names.cardinality, names.zipfian != null ? "/zipfian" : "",
+                             types.cardinality, types.zipfian != null ? "/zipfian" : "",
+                             minNameLength, maxNameLength, normalNameLength ? "/normal" : "");
+    }
+
+    // Name of name index, prefix encodes the index and the rest is random padding to sampled length.
+    private String name(final int index) {
+        final SplittableRandom random = new SplittableRandom((seed + index) * GOLDEN_GAMMA);
+        final int length = Math.max(2 * nameDigits, nameLength(random));
+        final StringBuilder sb = new StringBuilder(length);
+        int value = index;
+        for (int i = 0; i < nameDigits; i++) {
+            final int syllable = value % SYLLABLES;
+            value /= SYLLABLES;
+            sb.append(CONSONANTS.charAt(syllable / VOWELS.length())).append(VOWELS.charAt(syllable % VOWELS.length()));
+        }
+        while (sb.length() < length) {
+            sb.append(sb.length() % 2 == 0
+                              ? CONSONANTS.charAt(random.nextInt(CONSONANTS.length()))
+                              : VOWELS.charAt(random.nextInt(VOWELS.length())));
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        return sb.toString();
+    }
+
+    private int nameLength(final SplittableRandom random) {
+        if (!normalNameLength) {
+            return random.nextInt(minNameLength, maxNameLength + 1);
+        }
+        // Normal distribution centered between bounds, bounds are three standard deviations away.
+        final double mean = (minNameLength + maxNameLength) / 2.0;
+        final double deviation = (maxNameLength - minNameLength) / 6.0;
+        final double length = mean + deviation * gaussian(random);
+        return (int) Math.max(minNameLength, Math.min(maxNameLength, Math.round(length)));
+    }
+
+    // Standard normal value by Box-Muller transform.
+    private static double gaussian(final SplittableRandom random) {
+        final double u = 1.0 - random.nextDouble();
+        final double v = random.nextDouble();
+        return Math.sqrt(-2.0 * Math.log(u)) * Math.cos(2.0 * Math.PI * v);
+    }
+
+    private static boolean zipfian(final Config config) {
+        return config.asString().map(value -> {
+            switch (value.trim().toLowerCase()) {
+                case "uniform":
+                    return false;
+                case "zipfian":
+                    return true;
+                default:
+                    throw new IllegalArgumentException(String.format("Unknown value distribution %s.", value));
+            }
+        }).orElse(false);
+    }
+
+    private static boolean parseLengthDistribution(final String value) {
+        switch (value.trim().toLowerCase()) {
+            case "uniform":
+                return false;
+            case "normal":
+                return true;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown length distribution %s.", value));
+        }
+    }
+
+    // Distinct values with uniform or zipfian popularity.
+    private static final class Values {
+
+        private final int cardinality;
+        private final KeySampler.Zipfian zipfian;
+
+        private Values(final int cardinality, final boolean zipfian) {
+            if (cardinality < 1) {
+                throw new IllegalArgumentException(String.format("Cardinality %d is not positive.", cardinality));
+            }
+            this.cardinality = cardinality;
+            this.zipfian = zipfian ? new KeySampler.Zipfian(cardinality, ZIPFIAN_THETA) : null;
+        }
+
+        private int sample(final SplittableRandom random) {
+            return zipfian != null ? (int) zipfian.sample(random.nextDouble()) : random.nextInt(cardinality);
+        }
+
+    }
+
+}
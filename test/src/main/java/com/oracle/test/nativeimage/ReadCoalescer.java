@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+
+import com.datastax.oss.driver.api.core.cql.Row;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+
+/**
+ * Single-flight execution of identical single row reads.
+ * <p>Concurrent reads of the same statement with the same bind values share one statement
+ * execution and all of them receive its first row. Only the row is shared, so readers never
+ * compete for result set iteration. Reads in flight are tracked in {@link ConcurrentHashMap},
+ * joining a read takes no lock.
+ * <p>Writes must call {@link #invalidate(StatementRegistry.Handle, Object...)} when they complete,
+ * so reads started after the write never join a read which started before it.
+ */
+public final class ReadCoalescer {
+
+    private final boolean enabled;
+    private final Map<Key, CompletableFuture<Row>> inFlight;
+    private final Counter executions;
+    private final Counter saved;
+
+    private ReadCoalescer(final boolean enabled) {
+        this.enabled = enabled;
+        this.inFlight = new ConcurrentHashMap<>();
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.executions = metrics.counter("coalescing.executions");
+        this.saved = metrics.counter("coalescing.saved");
+        metrics.register(
+                Metadata.builder()
+                        .withName("coalescing.inFlight")
+                        .withDescription("Distinct reads in flight")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Integer>) inFlight::size);
+    }
+
+    /**
+     * Creates reads coalescer from {@code app.coalescing} configuration node.
+     *
+     * @param config coalescer configuration
+     * @return reads coalescer, disabled coalescer executes each read
+     */
+    public static ReadCoalescer create(final Config config) {
+        return new ReadCoalescer(config.get("enabled").asBoolean().orElse(true));
+    }
+
+    /**
+     * Execute statement and return its first row, or join identical execution in flight.
+     *
+     * @param stmt statement to execute
+     * @param values values to bind
+     * @return first row of the result or {@code null} when result is empty
+     */
+    public CompletionStage<Row> one(final StatementRegistry.Handle stmt, final Object... values) {
+        if (!enabled) {
+            executions.inc();
+            return stmt.executeAsync(values).thenApply(rs -> rs.one());
+        }
+        final Key key = new Key(stmt.name(), values);
+        final CompletableFuture<Row> promise = new CompletableFuture<>();
+        final CompletableFuture<Row> current = inFlight.putIfAbsent(key, promise);
+        if (current != null) {
+            saved.inc();
+            return current;
+        }
+        executions.inc();
+        CompletionStage<Row> row;
+        try {
+            row = stmt.executeAsync(values).thenApply(rs -> rs.one());
+        } catch (RuntimeException ex) {
+            row = CompletableFuture.failedFuture(ex);
+        }
+        row.whenComplete((result, t) -> {
+            // Remove the read first, so late readers don't join already completed execution.
+            inFlight.remove(key, promise);
+            if (t == null) {
+                promise.complete(result);
+            } else {
+                promise.completeExceptionally(CassandraService.unwrap(t));
+            }
+        });
+        return promise;
+    }
+
+    /**
+     * Detach read in flight from new readers. Readers which already joined it still get its result.
+     *
+     * @param stmt statement of the read
+     * @param values values bound to the read
+     */
+    public void invalidate(final StatementRegistry.Handle stmt, final Object... values) {
+        if (enabled) {
+            inFlight.remove(new Key(stmt.name(), values));
+        }
+    }
+
+    /**
+     * Detach all reads in flight from new readers.
+     */
+    public void invalidateAll() {
+        inFlight.clear();
+    }
+
+    // Statement name and bind values.
+    private static final class Key {
+
+        private final String name;
+        private final Object[] values;
+        private final int hash;
+
+        private Key(final String name, final Object[] values) {
+            this.name = name;
+            this.values = values;
+            this.hash = 31 * name.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return hash == key.hash && name.equals(key.name) && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+
+/**
+ * Row to JSON object encoder compiled from result set column definitions.
+ * <p>Column names are encoded once, when the encoder is compiled, together with the prefix
+ * of each member. Column values are read by index with accessor matching column type and written
+ * as JSON bytes, so encoding a row does not build any JSON value. Text columns are copied from
+ * their raw UTF-8 bytes without decoding them into {@link String}.
+ * <p>Numeric and boolean columns are written as JSON numbers and booleans, {@code NULL} values
+ * as JSON {@code null} and all other types as JSON string of the value returned by the driver codec.
+ * Output of text, numeric and boolean columns is byte compatible with JSON-P serialization of the same row,
+ * float columns are written with float precision.
+ */
+public final class RowEncoder {
+
+    // Initial capacity of thread local encoding buffer
+    private static final int BUFFER_CAPACITY = 256;
+    // Thread local encoding buffer is dropped when it grows above this size
+    private static final int BUFFER_MAX_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<JsonOutput> OUTPUT = ThreadLocal.withInitial(() -> new JsonOutput(BUFFER_CAPACITY));
+    private static final byte[] EMPTY = "{}".getBytes(StandardCharsets.US_ASCII);
+
+    private final ColumnDefinitions definitions;
+    // JSON member prefix of each column: {"name": or ,"name":
+    private final byte[][] prefixes;
+    private final ColumnWriter[] writers;
+
+    private RowEncoder(final ColumnDefinitions definitions, final byte[][] prefixes, final ColumnWriter[] writers) {
+        this.definitions = definitions;
+        this.prefixes = prefixes;
+        this.writers = writers;
+    }
+
+    /**
+     * Compile row encoder for result set columns.
+     *
+     * @param definitions result set column definitions
+     * @return row encoder
+     */
+    public static RowEncoder compile(final ColumnDefinitions definitions) {
+        final int size = definitions.size();
+        final byte[][] prefixes = new byte[size][];
+        final ColumnWriter[] writers = new ColumnWriter[size];
+        final JsonOutput out = new JsonOutput(32);
+        for (int i = 0; i < size; i++) {
+            final ColumnDefinition definition = definitions.get(i);
+            out.reset();
+            out.write(i == 0 ? '{' : ',')
+                    .writeString(definition.getName().asInternal())
+                    .write(':');
+            prefixes[i] = out.toByteArray();
+            writers[i] = writer(definition.getType().getProtocolCode());
+        }
+        return new RowEncoder(definitions, prefixes, writers);
+    }
+
+    /**
+     * Column definitions this encoder was compiled from.
+     *
+     * @return result set column definitions
+     */
+    public ColumnDefinitions definitions() {
+        return definitions;
+    }
+
+    /**
+     * Whether this encoder can encode rows with provided columns.
+     * Columns must have the same names and types in the same order.
+     *
+     * @param columns result set column definitions
+     * @return value of {@code true} when rows can be encoded by this encoder
+     */
+    public boolean matches(final ColumnDefinitions columns) {
+        if (columns == definitions) {
+            return true;
+        }
+        if (columns.size() != definitions.size()) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            final ColumnDefinition column = columns.get(i);
+            final ColumnDefinition definition = definitions.get(i);
+            if (!column.getName().equals(definition.getName()) || !column.getType().equals(definition.getType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encode row as JSON object.
+     *
+     * @param row row to encode
+     * @return UTF-8 encoded JSON object
+     */
+    public byte[] encode(final Row row) {
+        final JsonOutput out = OUTPUT.get();
+        out.reset();
+        encode(row, out);
+        final byte[] bytes = out.toByteArray();
+        if (out.size() > BUFFER_MAX_CAPACITY) {
+            OUTPUT.remove();
+        }
+        return bytes;
+    }
+
+    /**
+     * Encode row as JSON object and append it to the output.
+     *
+     * @param row row to encode
+     * @param out JSON output
+     */
+    public void encode(final Row row, final JsonOutput out) {
+        if (prefixes.length == 0) {
+            out.write(EMPTY);
+            return;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            out.write(prefixes[i]);
+            if (row.isNull(i)) {
+                out.writeNull();
+            } else {
+                writers[i].write(row, i, out);
+            }
+        }
+        out.write('}');
+    }
+
+    // Column value writer selected by protocol code of the column type.
+    private static ColumnWriter writer(final int protocolCode) {
+        switch (protocolCode) {
+            case ProtocolConstants.DataType.INT:
+                return (row, i, out) -> out.writeInt(row.getInt(i));
+            case ProtocolConstants.DataType.BIGINT:
+            case ProtocolConstants.DataType.COUNTER:
+                return (row, i, out) -> out.writeLong(row.getLong(i));
+            case ProtocolConstants.DataType.SMALLINT:
+                return (row, i, out) -> out.writeInt(row.getShort(i));
+            case ProtocolConstants.DataType.TINYINT:
+                return (row, i, out) -> out.writeInt(row.getByte(i));
+            case ProtocolConstants.DataType.BOOLEAN:
+                return (row, i, out) -> out.writeBoolean(row.getBoolean(i));
+            case ProtocolConstants.DataType.DOUBLE:
+                return (row, i, out) -> {
+                    final double value = row.getDouble(i);
+                    writeNumber(value, Double.isFinite(value) ? BigDecimal.valueOf(value) : null, out);
+                };
+            case ProtocolConstants.DataType.FLOAT:
+                return (row, i, out) -> {
+                    final float value = row.getFloat(i);
+                    writeNumber(value, Float.isFinite(value) ? new BigDecimal(Float.toString(value)) : null, out);
+                };
+            case ProtocolConstants.DataType.DECIMAL:
+                return (row, i, out) -> out.write(row.getBigDecimal(i).toString().getBytes(StandardCharsets.US_ASCII));
+            case ProtocolConstants.DataType.VARINT:
+                return (row, i, out) -> out.write(row.getBigInteger(i).toString().getBytes(StandardCharsets.US_ASCII));
+            case ProtocolConstants.DataType.VARCHAR:
+            case ProtocolConstants.DataType.ASCII:
+                return (row, i, out) -> out.writeString(row.getBytesUnsafe(i));
+            default:
+                return (row, i, out) -> out.writeString(String.valueOf(row.getObject(i)));
+        }
+    }
+
+    // Finite values are formatted by BigDecimal like JSON-P does, e.g. 1.0E+10.
+    // JSON has no representation of NaN and infinity, those are written as strings.
+    private static void writeNumber(final double value, final BigDecimal decimal, final JsonOutput out) {
+        if (decimal != null) {
+            out.write(decimal.toString().getBytes(StandardCharsets.US_ASCII));
+        } else {
+            out.writeString(Double.toString(value));
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnWriter {
+
+        void write(Row row, int index, JsonOutput out);
+
+    }
+
+}
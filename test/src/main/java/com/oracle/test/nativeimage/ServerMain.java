@@ -15,15 +15,19 @@
  */
 package com.oracle.test.nativeimage;
 
-import java.net.InetSocketAddress;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import io.helidon.common.LogConfig;
 import io.helidon.config.Config;
 import io.helidon.config.ConfigSources;
 import io.helidon.media.jsonp.JsonpSupport;
+import io.helidon.metrics.MetricsSupport;
+import io.helidon.tests.integration.tools.service.AppResponse;
 import io.helidon.webserver.Routing;
 import io.helidon.webserver.WebServer;
 
@@ -46,6 +50,7 @@ public class ServerMain {
      */
     public static void main(String[] args) {
 
+        final Startup startup = Startup.begin();
         String configFile;
         if (args != null && args.length > 0) {
             configFile = args[0];
@@ -55,25 +60,52 @@ public class ServerMain {
         LOGGER.info(() -> String.format("Configuration file: %s", configFile));
 
         LogConfig.configureRuntime();
-        startServer(configFile);
+        startServer(configFile, startup);
 
     }
 
-    private static WebServer startServer(final String configFile) {
+    // Database session is connected while web server is started, application is ready when both are done.
+    private static WebServer startServer(final String configFile, final Startup startup) {
 
+        final long configStart = System.nanoTime();
         final Config config = Config.create(ConfigSources.classpath(configFile));
-        final Map<String,String> statements = statementsMap(config);
-        final CqlSession session = CqlSession.builder()
-                .addContactPoint(
-                        new InetSocketAddress(
-                                config.get("db.connection.host").as(String.class).get(),
-                                config.get("db.connection.port").as(Integer.class).get()))
-                .withLocalDatacenter("single")
-                .build();
-        final LifeCycleService lcResource = new LifeCycleService(session, statements);
-        final Routing routing = Routing.builder()
-                .register("/LifeCycle", lcResource)
-                .register("/Cassandra", new CassandraService(session, statements))
+        AppResponse.configure(config.get("app.errors"));
+        final SlowQueryLog slowQueries = SlowQueryLog.create(config.get("app.slow-queries"));
+        final StatementRegistry statements = new StatementRegistry(statementsMap(config), slowQueries);
+        final SessionSettings sessionSettings = SessionSettings.create(config.get("db.connection"));
+        startup.record("config", configStart);
+        final CompletionStage<Boolean> sessionReady = startup.time("session", () -> CqlSession.builder()
+                        .withConfigLoader(sessionSettings.configLoader())
+                        .addSchemaChangeListener(statements)
+                        .addRequestTracker(PercentileSpeculativeExecutionPolicy.tracker())
+                        .buildAsync())
+                .thenCompose(session -> {
+                    statements.attach(session);
+                    DriverMetrics.bridge(session);
+                    return startup.time("metadata", session::checkSchemaAgreementAsync);
+                });
+        final HandlerMode mode = config.get("app.handlers").asString().map(HandlerMode::parse).orElse(HandlerMode.ASYNC);
+        final HandlerExecutor executor = HandlerExecutor.create(config.get("app.executor"));
+        LOGGER.info(() -> String.format("Request handlers mode: %s, executor: %s", mode, executor.type()));
+        final WriteBuffer writeBuffer = WriteBuffer.create(config.get("app.write-buffer"), statements);
+        final EndpointMetrics endpoints = EndpointMetrics.create(config.get("app.endpoint-metrics"));
+        final GracefulShutdown shutdown = GracefulShutdown.create(config.get("app.shutdown"), writeBuffer, statements);
+        final Dataset dataset = new Dataset("pokemon", statements);
+        final HealthChecker health = HealthChecker.create(config.get("app.health"), statements, startup, shutdown);
+        final CassandraService cassandraResource = new CassandraService(
+                statements, mode, executor, writeBuffer, endpoints, dataset, config.get("app"));
+        final LifeCycleService lcResource = new LifeCycleService(
+                statements, mode, writeBuffer, endpoints, health, BulkLoader.create(config.get("app.init")),
+                dataset, cassandraResource::invalidateAll, shutdown);
+        final Routing.Builder routingBuilder = Routing.builder()
+                .register(MetricsSupport.create(config.get("metrics")))
+                .register("/LifeCycle", lcResource);
+        // Shutdown and limiter must be registered before the service to handle requests first.
+        routingBuilder.register("/Cassandra", shutdown);
+        ConcurrencyLimiter.create(config.get("app.limiter"))
+                .ifPresent(limiter -> routingBuilder.register("/Cassandra", limiter));
+        final Routing routing = routingBuilder
+                .register("/Cassandra", cassandraResource)
                 .build();
 
         final WebServer server = WebServer.builder()
@@ -85,26 +117,53 @@ public class ServerMain {
         // Set server instance to exit resource.
         lcResource.setServer(server);
         // Start the server and print some info.
-        server.start().thenAccept(
+        final CompletionStage<WebServer> serverReady = startup.time("server", server::start);
+        serverReady.thenAccept(
                 ws -> {
                     System.out.println(String.format("WEB server is up! http://localhost:%d/", ws.port()));
                 });
+        // Readiness probes are answered from health check, so first check must complete before application is ready.
+        serverReady.thenCombine(sessionReady, (ws, schemaAgreement) -> schemaAgreement)
+                .thenCompose(schemaAgreement -> startup.time("health", health::start).thenApply(v -> schemaAgreement))
+                .whenComplete((schemaAgreement, t) -> {
+                    if (t != null) {
+                        LOGGER.log(Level.SEVERE, t, () -> String.format("Startup failed: %s", t.getMessage()));
+                        server.shutdown();
+                        return;
+                    }
+                    if (!schemaAgreement) {
+                        LOGGER.warning("Database schema agreement was not reached during startup.");
+                    }
+                    startup.ready();
+                });
+
+        // Terminated process drains requests too, unless server was already stopped by exit request.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (server.isRunning()) {
+                shutdown.shutdown()
+                        .thenCompose(v -> server.shutdown())
+                        .toCompletableFuture()
+                        .join();
+            }
+        }, "graceful-shutdown"));
 
         // Server threads are not daemon. NO need to block. Just react.
         server.whenShutdown().thenRun(
-                () -> System.out.println("WEB server is DOWN. Good bye!"));
+                () -> {
+                    health.shutdown();
+                    executor.shutdown();
+                    slowQueries.shutdown();
+                    System.out.println("WEB server is DOWN. Good bye!");
+                });
 
         return server;
     }
 
-    private static Map<String,String> statementsMap(final Config config) {
-        final Config statementsConfig = config.get("db.statements");
-        Map<String,String> statements = new HashMap<>();
-        statementsConfig.traverse().forEach(node -> {
-            if (node.isLeaf()) {
-                statements.put(node.name(), node.asString().get());
-            }
-        });
+    // Statements are configured as CQL string or as node with CQL and execution options.
+    private static Map<String, StatementOptions> statementsMap(final Config config) {
+        final Map<String, StatementOptions> statements = new HashMap<>();
+        config.get("db.statements").asNodeList().orElse(List.of())
+                .forEach(node -> statements.put(node.name(), StatementOptions.create(node)));
         return statements;
     }
 }
@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.config.ProgrammaticDriverConfigLoaderBuilder;
+
+/**
+ * Database session settings from {@code db.connection} configuration node.
+ * <p>Settings are mapped to driver programmatic configuration, options which are not configured
+ * keep driver defaults:
+ * <ul>
+ *     <li>{@code contact-points}: list of {@code host:port} addresses, or single {@code host} and {@code port}</li>
+ *     <li>{@code local-datacenter}: datacenter of the load balancing policy</li>
+ *     <li>{@code pool.local-size}, {@code pool.remote-size}: connections per local and remote node</li>
+ *     <li>{@code pool.max-requests-per-connection}: maximum number of requests in flight on single connection</li>
+ *     <li>{@code throttler.type}: {@code pass-through}, {@code concurrency-limiting} or {@code rate-limiting}</li>
+ *     <li>{@code throttler.max-concurrent-requests}, {@code throttler.max-requests-per-second},
+ *         {@code throttler.max-queue-size}, {@code throttler.drain-interval}: throttler limits</li>
+ *     <li>{@code request-timeout}, {@code heartbeat-interval}: durations in milliseconds</li>
+ *     <li>{@code compression}: protocol compression {@code none}, {@code lz4} or {@code snappy}</li>
+ *     <li>{@code timestamp-generator}: {@code atomic}, {@code thread-local} or {@code server-side}; client side
+ *         timestamps keep retried and speculatively executed writes idempotent</li>
+ *     <li>{@code speculative-execution.type}: {@code none}, {@code constant} or {@code percentile}
+ *         ({@link PercentileSpeculativeExecutionPolicy}), with {@code max-executions}, {@code delay}
+ *         and percentile policy {@code percentile} and {@code min-delay}; only idempotent statements
+ *         are executed speculatively</li>
+ *     <li>{@code metrics.session}, {@code metrics.node}: enabled driver session and node metrics,
+ *         {@code metrics.refresh-interval}: driver latency histograms refresh interval in milliseconds;
+ *         enabled metrics are published by {@link DriverMetrics}</li>
+ *     <li>{@code profiles}: named execution profiles referenced by statements, each of them with optional
+ *         {@code consistency}, {@code serial-consistency}, {@code request-timeout}, {@code page-size},
+ *         {@code idempotent} and {@code speculative-execution}</li>
+ * </ul>
+ */
+public final class SessionSettings {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionSettings.class.getName());
+
+    // Default local datacenter of single node test cluster
+    private static final String DEFAULT_LOCAL_DATACENTER = "single";
+
+    private final DriverConfigLoader configLoader;
+
+    private SessionSettings(final DriverConfigLoader configLoader) {
+        this.configLoader = configLoader;
+    }
+
+    /**
+     * Creates database session settings from {@code db.connection} configuration node.
+     *
+     * @param config connection configuration
+     * @return database session settings
+     */
+    public static SessionSettings create(final Config config) {
+        final ProgrammaticDriverConfigLoaderBuilder builder = DriverConfigLoader.programmaticBuilder();
+        builder.withStringList(DefaultDriverOption.CONTACT_POINTS, contactPoints(config));
+        builder.withString(DefaultDriverOption.LOAD_BALANCING_LOCAL_DATACENTER,
+                           config.get("local-datacenter").asString().orElse(DEFAULT_LOCAL_DATACENTER));
+        config.get("pool.local-size").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE, value));
+        config.get("pool.remote-size").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.CONNECTION_POOL_REMOTE_SIZE, value));
+        config.get("pool.max-requests-per-connection").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.CONNECTION_MAX_REQUESTS, value));
+        config.get("throttler.type").asString()
+                .ifPresent(value -> builder.withString(DefaultDriverOption.REQUEST_THROTTLER_CLASS, throttlerClass(value)));
+        config.get("throttler.max-concurrent-requests").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_CONCURRENT_REQUESTS, value));
+        config.get("throttler.max-requests-per-second").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_REQUESTS_PER_SECOND, value));
+        config.get("throttler.max-queue-size").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_QUEUE_SIZE, value));
+        config.get("throttler.drain-interval").asLong()
+                .ifPresent(value -> builder.withDuration(DefaultDriverOption.REQUEST_THROTTLER_DRAIN_INTERVAL,
+                                                         Duration.ofMillis(value)));
+        config.get("request-timeout").asLong()
+                .ifPresent(value -> builder.withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(value)));
+        config.get("heartbeat-interval").asLong()
+                .ifPresent(value -> builder.withDuration(DefaultDriverOption.HEARTBEAT_INTERVAL, Duration.ofMillis(value)));
+        config.get("compression").asString()
+                .ifPresent(value -> builder.withString(DefaultDriverOption.PROTOCOL_COMPRESSION, value));
+        config.get("timestamp-generator").asString()
+                .ifPresent(value -> builder.withString(DefaultDriverOption.TIMESTAMP_GENERATOR_CLASS,
+                                                       timestampGeneratorClass(value)));
+        speculativeExecution(builder, config.get("speculative-execution"));
+        config.get("metrics.session").asList(String.class)
+                .ifPresent(value -> builder.withStringList(DefaultDriverOption.METRICS_SESSION_ENABLED, value));
+        config.get("metrics.node").asList(String.class)
+                .ifPresent(value -> builder.withStringList(DefaultDriverOption.METRICS_NODE_ENABLED, value));
+        config.get("metrics.refresh-interval").asLong().map(Duration::ofMillis).ifPresent(value -> {
+            builder.withDuration(DefaultDriverOption.METRICS_SESSION_CQL_REQUESTS_INTERVAL, value);
+            builder.withDuration(DefaultDriverOption.METRICS_SESSION_THROTTLING_INTERVAL, value);
+            builder.withDuration(DefaultDriverOption.METRICS_NODE_CQL_MESSAGES_INTERVAL, value);
+        });
+        config.get("profiles").asNodeList().orElse(List.of()).forEach(profile -> profile(builder, profile));
+        final SessionSettings settings = new SessionSettings(builder.build());
+        LOGGER.info(() -> String.format("Database session settings: %s", settings));
+        return settings;
+    }
+
+    /**
+     * Driver configuration loader to build the session with.
+     *
+     * @return driver configuration loader
+     */
+    public DriverConfigLoader configLoader() {
+        return configLoader;
+    }
+
+    /**
+     * Effective settings of the default profile, including driver defaults.
+     *
+     * @return effective settings
+     */
+    @Override
+    public String toString() {
+        final DriverExecutionProfile profile = configLoader.getInitialConfig().getDefaultProfile();
+        return String.format(
+                "contact-points=%s, local-datacenter=%s, pool.local-size=%d, pool.remote-size=%d, "
+                        + "pool.max-requests-per-connection=%d, throttler=%s, throttler.max-concurrent-requests=%d, "
+                        + "throttler.max-requests-per-second=%d, throttler.max-queue-size=%d, "
+                        + "throttler.drain-interval=%d ms, request-timeout=%d ms, heartbeat-interval=%d ms, compression=%s, "
+                        + "timestamp-generator=%s, speculative-execution=%s, "
+                        + "metrics.session=%s, metrics.node=%s, profiles=%s",
+                profile.getStringList(DefaultDriverOption.CONTACT_POINTS),
+                profile.getString(DefaultDriverOption.LOAD_BALANCING_LOCAL_DATACENTER),
+                profile.getInt(DefaultDriverOption.CONNECTION_POOL_LOCAL_SIZE),
+                profile.getInt(DefaultDriverOption.CONNECTION_POOL_REMOTE_SIZE),
+                profile.getInt(DefaultDriverOption.CONNECTION_MAX_REQUESTS),
+                profile.getString(DefaultDriverOption.REQUEST_THROTTLER_CLASS),
+                profile.getInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_CONCURRENT_REQUESTS, 0),
+                profile.getInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_REQUESTS_PER_SECOND, 0),
+                profile.getInt(DefaultDriverOption.REQUEST_THROTTLER_MAX_QUEUE_SIZE, 0),
+                profile.getDuration(DefaultDriverOption.REQUEST_THROTTLER_DRAIN_INTERVAL, Duration.ZERO).toMillis(),
+                profile.getDuration(DefaultDriverOption.REQUEST_TIMEOUT).toMillis(),
+                profile.getDuration(DefaultDriverOption.HEARTBEAT_INTERVAL).toMillis(),
+                profile.getString(DefaultDriverOption.PROTOCOL_COMPRESSION, "none"),
+                profile.getString(DefaultDriverOption.TIMESTAMP_GENERATOR_CLASS),
+                profile.getString(DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS),
+                profile.getStringList(DefaultDriverOption.METRICS_SESSION_ENABLED),
+                profile.getStringList(DefaultDriverOption.METRICS_NODE_ENABLED),
+                configLoader.getInitialConfig().getProfiles().keySet());
+    }
+
+    // Execution profile with options overriding the default profile.
+    private static void profile(final ProgrammaticDriverConfigLoaderBuilder builder, final Config config) {
+        builder.startProfile(config.name());
+        config.get("consistency").asString()
+                .ifPresent(value -> builder.withString(DefaultDriverOption.REQUEST_CONSISTENCY,
+                                                       StatementOptions.consistency(value).name()));
+        config.get("serial-consistency").asString()
+                .ifPresent(value -> builder.withString(DefaultDriverOption.REQUEST_SERIAL_CONSISTENCY,
+                                                       StatementOptions.consistency(value).name()));
+        config.get("request-timeout").asLong()
+                .ifPresent(value -> builder.withDuration(DefaultDriverOption.REQUEST_TIMEOUT, Duration.ofMillis(value)));
+        config.get("page-size").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.REQUEST_PAGE_SIZE, value));
+        config.get("idempotent").asBoolean()
+                .ifPresent(value -> builder.withBoolean(DefaultDriverOption.REQUEST_DEFAULT_IDEMPOTENCE, value));
+        speculativeExecution(builder, config.get("speculative-execution"));
+        builder.endProfile();
+    }
+
+    // Speculative execution policy of the default or current execution profile.
+    private static void speculativeExecution(final ProgrammaticDriverConfigLoaderBuilder builder, final Config config) {
+        config.get("type").asString()
+                .ifPresent(value -> builder.withString(DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS,
+                                                       speculativeExecutionClass(value)));
+        config.get("max-executions").asInt()
+                .ifPresent(value -> builder.withInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX, value));
+        config.get("delay").asLong()
+                .ifPresent(value -> builder.withDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY,
+                                                         Duration.ofMillis(value)));
+        config.get("percentile").asDouble()
+                .ifPresent(value -> builder.withDouble(PercentileSpeculativeExecutionPolicy.Option.PERCENTILE, value));
+        config.get("min-delay").asLong()
+                .ifPresent(value -> builder.withDuration(PercentileSpeculativeExecutionPolicy.Option.MIN_DELAY,
+                                                         Duration.ofMillis(value)));
+    }
+
+    // Contact points list, or single contact point from host and port.
+    private static List<String> contactPoints(final Config config) {
+        final Config contactPoints = config.get("contact-points");
+        if (contactPoints.exists()) {
+            return contactPoints.asList(String.class).get();
+        }
+        return List.of(String.format("%s:%d",
+                                     config.get("host").asString().get(),
+                                     config.get("port").asInt().get()));
+    }
+
+    private static String speculativeExecutionClass(final String type) {
+        switch (type) {
+            case "none":
+                return "NoSpeculativeExecutionPolicy";
+            case "constant":
+                return "ConstantSpeculativeExecutionPolicy";
+            case "percentile":
+                return PercentileSpeculativeExecutionPolicy.class.getName();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown speculative execution type: %s", type));
+        }
+    }
+
+    private static String timestampGeneratorClass(final String type) {
+        switch (type) {
+            case "atomic":
+                return "AtomicTimestampGenerator";
+            case "thread-local":
+                return "ThreadLocalTimestampGenerator";
+            case "server-side":
+                return "ServerSideTimestampGenerator";
+            default:
+                throw new IllegalArgumentException(String.format("Unknown timestamp generator type: %s", type));
+        }
+    }
+
+    private static String throttlerClass(final String type) {
+        switch (type) {
+            case "pass-through":
+                return "PassThroughRequestThrottler";
+            case "concurrency-limiting":
+                return "ConcurrencyLimitingRequestThrottler";
+            case "rate-limiting":
+                return "RateLimitingRequestThrottler";
+            default:
+                throw new IllegalArgumentException(String.format("Unknown request throttler type: %s", type));
+        }
+    }
+
+}
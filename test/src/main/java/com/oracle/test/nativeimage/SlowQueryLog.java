@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+
+import com.datastax.oss.driver.api.core.DriverException;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
+import com.datastax.oss.driver.api.core.cql.QueryTrace;
+import com.datastax.oss.driver.api.core.cql.TraceEvent;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+/**
+ * Log of statement executions slower than configured threshold.
+ * <p>Slow execution is logged with statement name, bind values, coordinator, number of attempts
+ * and latency. Values of bind variables listed in {@code redact} are replaced with {@code <redacted>}.
+ * Sampled fraction of all executions is sent with CQL request tracing enabled, when such execution
+ * is slow, server side trace events are fetched and logged with it.
+ * <p>Execution thread only compares latency with the threshold, message formatting, trace fetching
+ * and logging run on single background thread. Slow executions which don't fit into its queue
+ * are counted and not logged. When fetched trace does not fit into the queue, it is counted as dropped
+ * and the execution is logged without it.
+ */
+public final class SlowQueryLog {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+
+    // Default threshold in milliseconds
+    private static final long DEFAULT_THRESHOLD = 500;
+    private static final int DEFAULT_QUEUE_SIZE = 1000;
+    // Maximum logged length of single bind value
+    private static final int MAX_VALUE_LENGTH = 100;
+    private static final String REDACTED = "<redacted>";
+
+    private final boolean enabled;
+    private final long thresholdNanos;
+    private final double traceSampling;
+    private final Set<String> redact;
+    private final ExecutorService executor;
+    private final Counter detected;
+    private final Counter traced;
+    private final Counter dropped;
+
+    private SlowQueryLog(final boolean enabled,
+                         final long threshold,
+                         final double traceSampling,
+                         final Set<String> redact,
+                         final int queueSize) {
+        this.enabled = enabled;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.traceSampling = enabled ? traceSampling : 0;
+        this.redact = redact;
+        this.executor = enabled ? executor(queueSize) : null;
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.detected = metrics.counter("slowQueries.detected");
+        this.traced = metrics.counter("slowQueries.traced");
+        this.dropped = metrics.counter("slowQueries.dropped");
+    }
+
+    /**
+     * Creates slow query log from {@code app.slow-queries} configuration node.
+     *
+     * @param config slow query log configuration
+     * @return slow query log
+     */
+    public static SlowQueryLog create(final Config config) {
+        final boolean enabled = config.get("enabled").asBoolean().orElse(true);
+        final long threshold = config.get("threshold").asLong().orElse(DEFAULT_THRESHOLD);
+        final double traceSampling = config.get("trace-sampling").asDouble().orElse(0.0);
+        final Set<String> redact = Set.copyOf(config.get("redact").asList(String.class).orElse(List.of()));
+        final int queueSize = config.get("queue-size").asInt().orElse(DEFAULT_QUEUE_SIZE);
+        LOGGER.info(() -> String.format("Slow query log enabled: %b, threshold: %d ms, trace sampling: %.4f, redact: %s",
+                                        enabled, threshold, traceSampling, redact));
+        return new SlowQueryLog(enabled, threshold, traceSampling, redact, queueSize);
+    }
+
+    /**
+     * Enable CQL request tracing on sampled fraction of statements.
+     *
+     * @param statement statement to execute
+     * @return statement to execute, with tracing enabled when sampled
+     */
+    public BoundStatement sample(final BoundStatement statement) {
+        if (traceSampling > 0 && ThreadLocalRandom.current().nextDouble() < traceSampling) {
+            return statement.setTracing(true);
+        }
+        return statement;
+    }
+
+    /**
+     * Check latency of completed statement execution and log it when it is slow.
+     *
+     * @param name statement name
+     * @param statement executed statement
+     * @param start execution start time from {@link System#nanoTime()}
+     * @param rs execution result, {@code null} when execution failed
+     * @param t execution failure, {@code null} when execution succeeded
+     */
+    public void completed(final String name,
+                          final BoundStatement statement,
+                          final long start,
+                          final AsyncResultSet rs,
+                          final Throwable t) {
+        final long latency = System.nanoTime() - start;
+        if (!enabled || latency < thresholdNanos) {
+            return;
+        }
+        detected.inc();
+        try {
+            executor.execute(() -> log(name, statement, latency, rs, CassandraService.unwrap(t)));
+        } catch (RejectedExecutionException ex) {
+            dropped.inc();
+        }
+    }
+
+    /**
+     * Stop logging slow executions.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    // Runs on background thread.
+    private void log(final String name,
+                     final BoundStatement statement,
+                     final long latency,
+                     final AsyncResultSet rs,
+                     final Throwable t) {
+        final ExecutionInfo info = rs != null
+                ? rs.getExecutionInfo()
+                : t instanceof DriverException ? ((DriverException) t).getExecutionInfo() : null;
+        final String message = message(name, statement, latency, info, t);
+        if (info == null || !statement.isTracing()) {
+            LOGGER.warning(message);
+            return;
+        }
+        traced.inc();
+        info.getQueryTraceAsync().whenCompleteAsync((trace, traceFailure) -> {
+            if (traceFailure != null) {
+                LOGGER.warning(String.format("%s, trace is not available: %s", message, traceFailure.getMessage()));
+            } else {
+                LOGGER.warning(String.format("%s, trace:%s", message, trace(trace)));
+            }
+        }, executor).exceptionally(ex -> {
+            // Queue was full when trace arrived, log without trace on the driver thread.
+            if (CassandraService.unwrap(ex) instanceof RejectedExecutionException) {
+                dropped.inc();
+                LOGGER.warning(String.format("%s, trace was dropped", message));
+            }
+            return null;
+        });
+    }
+
+    private String message(final String name,
+                           final BoundStatement statement,
+                           final long latency,
+                           final ExecutionInfo info,
+                           final Throwable t) {
+        final StringBuilder sb = new StringBuilder("Slow statement ")
+                .append(name)
+                .append(": ")
+                .append(TimeUnit.NANOSECONDS.toMillis(latency))
+                .append(" ms");
+        if (info != null) {
+            sb.append(", coordinator ").append(info.getCoordinator() != null ? info.getCoordinator().getEndPoint() : null)
+                    .append(", attempts ").append(info.getErrors().size() + 1)
+                    .append(", speculative executions ").append(info.getSpeculativeExecutionCount());
+        }
+        if (t != null) {
+            sb.append(", failed: ").append(t.getMessage());
+        }
+        sb.append(", values [");
+        final ColumnDefinitions variables = statement.getPreparedStatement().getVariableDefinitions();
+        for (int i = 0; i < variables.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            final String variable = variables.get(i).getName().asInternal();
+            sb.append(variable).append('=');
+            if (!statement.isSet(i)) {
+                sb.append("<unset>");
+            } else if (redact.contains(variable)) {
+                sb.append(REDACTED);
+            } else {
+                final String value = String.valueOf(statement.getObject(i));
+                sb.append(value.length() > MAX_VALUE_LENGTH ? value.substring(0, MAX_VALUE_LENGTH) + "..." : value);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String trace(final QueryTrace trace) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%n    %s on %s, %d us",
+                                trace.getRequestType(), trace.getCoordinator(), trace.getDurationMicros()));
+        for (TraceEvent event : trace.getEvents()) {
+            sb.append(String.format("%n    %8d us %s [%s] %s",
+                                    event.getSourceElapsedMicros(),
+                                    event.getSource(),
+                                    event.getThreadName(),
+                                    event.getActivity()));
+        }
+        return sb.toString();
+    }
+
+    private static ExecutorService executor(final int queueSize) {
+        return new ThreadPoolExecutor(
+                1,
+                1,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                task -> {
+                    final Thread thread = new Thread(task, "slow-query-log");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+import io.helidon.metrics.RegistryFactory;
+
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+/**
+ * Startup phases timing and readiness.
+ * <p>Phases are timed by caller, they may overlap, e.g. database session is connected while web server
+ * binds its port. Duration of every phase is logged and published as {@code startup.phase} gauge tagged
+ * with phase name. Phase {@code ready} is time from startup begin until {@link #ready()} was called.
+ */
+public final class Startup {
+
+    private static final Logger LOGGER = Logger.getLogger(Startup.class.getName());
+
+    private static final String READY = "ready";
+
+    private final long begin;
+    private final MetricRegistry metrics;
+    // Phase durations in milliseconds in order of completion, guarded by this
+    private final Map<String, Long> phases;
+    private volatile boolean ready;
+
+    private Startup(final long begin) {
+        this.begin = begin;
+        this.metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.phases = new LinkedHashMap<>();
+        this.ready = false;
+    }
+
+    /**
+     * Begin startup timing.
+     *
+     * @return startup timing
+     */
+    public static Startup begin() {
+        return new Startup(System.nanoTime());
+    }
+
+    /**
+     * Record phase which started at given time and ends now.
+     *
+     * @param phase phase name
+     * @param start phase start time from {@link System#nanoTime()}
+     */
+    public void record(final String phase, final long start) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        synchronized (this) {
+            phases.put(phase, millis);
+        }
+        metrics.register(
+                Metadata.builder()
+                        .withName("startup.phase")
+                        .withDescription("Duration of startup phase")
+                        .withType(MetricType.GAUGE)
+                        .withUnit(MetricUnits.MILLISECONDS)
+                        .build(),
+                (Gauge<Long>) () -> millis,
+                new Tag("phase", phase));
+        LOGGER.info(() -> String.format("Startup phase %s: %d ms", phase, millis));
+    }
+
+    /**
+     * Time asynchronous phase which ends when its stage completes successfully.
+     *
+     * @param phase phase name
+     * @param action starts the phase
+     * @param <T> type of phase result
+     * @return stage of the phase, completed when the phase was recorded
+     */
+    public <T> CompletionStage<T> time(final String phase, final Supplier<CompletionStage<T>> action) {
+        final long start = System.nanoTime();
+        // Returned stage completes after the phase was recorded, so phases depending on it are recorded later.
+        return action.get().thenApply(result -> {
+            record(phase, start);
+            return result;
+        });
+    }
+
+    /**
+     * Mark application as ready to serve requests.
+     */
+    public void ready() {
+        record(READY, begin);
+        ready = true;
+        LOGGER.info(() -> String.format("Application is ready, startup phases: %s", this));
+    }
+
+    /**
+     * Whether application is ready to serve requests.
+     *
+     * @return value of {@code true} when all startup phases have completed
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Readiness and phase durations in milliseconds as JSON object.
+     *
+     * @return readiness JSON object
+     */
+    public JsonObject toJson() {
+        final JsonObjectBuilder phasesJson = Json.createObjectBuilder();
+        synchronized (this) {
+            phases.forEach(phasesJson::add);
+        }
+        return Json.createObjectBuilder()
+                .add("ready", ready)
+                .add("phases", phasesJson)
+                .build();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return phases.toString();
+    }
+
+}
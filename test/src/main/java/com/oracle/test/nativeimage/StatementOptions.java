@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import io.helidon.config.Config;
+
+import com.datastax.oss.driver.api.core.ConsistencyLevel;
+import com.datastax.oss.driver.api.core.DefaultConsistencyLevel;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatementBuilder;
+
+/**
+ * Configured statement with its execution options.
+ * <p>Statement is configured as CQL string, or as node with {@code cql} and optional execution options:
+ * <pre>
+ * select:
+ *     cql: "SELECT * FROM pokemon WHERE id = ?"
+ *     consistency: LOCAL_ONE
+ *     serial-consistency: LOCAL_SERIAL
+ *     timeout: 1000
+ *     page-size: 100
+ *     idempotent: true
+ *     profile: reads
+ * </pre>
+ * Timeout is in milliseconds, profile is name of driver execution profile from {@code db.connection.profiles}.
+ * Options are set on the statement which is prepared, so every bound statement inherits them without
+ * per request cost. Options which are not configured are taken from the execution profile.
+ */
+public final class StatementOptions {
+
+    private final String cql;
+    private final ConsistencyLevel consistency;
+    private final ConsistencyLevel serialConsistency;
+    private final Duration timeout;
+    private final Integer pageSize;
+    private final Boolean idempotent;
+    private final String profile;
+
+    private StatementOptions(final String cql,
+                             final ConsistencyLevel consistency,
+                             final ConsistencyLevel serialConsistency,
+                             final Duration timeout,
+                             final Integer pageSize,
+                             final Boolean idempotent,
+                             final String profile) {
+        this.cql = cql;
+        this.consistency = consistency;
+        this.serialConsistency = serialConsistency;
+        this.timeout = timeout;
+        this.pageSize = pageSize;
+        this.idempotent = idempotent;
+        this.profile = profile;
+    }
+
+    /**
+     * Creates statement options from single {@code db.statements} configuration node.
+     *
+     * @param config statement configuration, CQL string or node with {@code cql} and options
+     * @return statement options
+     */
+    public static StatementOptions create(final Config config) {
+        if (config.isLeaf()) {
+            return new StatementOptions(config.asString().get(), null, null, null, null, null, null);
+        }
+        return new StatementOptions(
+                config.get("cql").asString().get(),
+                config.get("consistency").asString().map(StatementOptions::consistency).orElse(null),
+                config.get("serial-consistency").asString().map(StatementOptions::consistency).orElse(null),
+                config.get("timeout").asLong().map(Duration::ofMillis).orElse(null),
+                config.get("page-size").asInt().orElse(null),
+                config.get("idempotent").asBoolean().orElse(null),
+                config.get("profile").asString().orElse(null));
+    }
+
+    /**
+     * CQL text of the statement.
+     *
+     * @return CQL text
+     */
+    public String cql() {
+        return cql;
+    }
+
+    /**
+     * Simple statement with configured execution options, to be prepared or executed.
+     *
+     * @return simple statement
+     */
+    public SimpleStatement statement() {
+        final SimpleStatementBuilder builder = SimpleStatement.builder(cql);
+        if (profile != null) {
+            builder.setExecutionProfileName(profile);
+        }
+        if (consistency != null) {
+            builder.setConsistencyLevel(consistency);
+        }
+        if (serialConsistency != null) {
+            builder.setSerialConsistencyLevel(serialConsistency);
+        }
+        if (timeout != null) {
+            builder.setTimeout(timeout);
+        }
+        if (pageSize != null) {
+            builder.setPageSize(pageSize);
+        }
+        if (idempotent != null) {
+            builder.setIdempotence(idempotent);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(cql);
+        append(sb, "consistency", consistency);
+        append(sb, "serial-consistency", serialConsistency);
+        append(sb, "timeout", timeout == null ? null : timeout.toMillis() + " ms");
+        append(sb, "page-size", pageSize);
+        append(sb, "idempotent", idempotent);
+        append(sb, "profile", profile);
+        return sb.toString();
+    }
+
+    private static void append(final StringBuilder sb, final String name, final Object value) {
+        if (value != null) {
+            sb.append(", ").append(name).append('=').append(value);
+        }
+    }
+
+    /*
+     * Parse consistency level name.
+     *
+     * @param value consistency level name, e.g. {@code LOCAL_ONE}
+     * @return consistency level
+     */
+    static ConsistencyLevel consistency(final String value) {
+        try {
+            return DefaultConsistencyLevel.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(String.format("Unknown consistency level: %s", value));
+        }
+    }
+
+}
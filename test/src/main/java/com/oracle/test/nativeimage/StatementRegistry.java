@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
+
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.metadata.schema.KeyspaceMetadata;
+import com.datastax.oss.driver.api.core.metadata.schema.SchemaChangeListenerBase;
+import com.datastax.oss.driver.api.core.metadata.schema.TableMetadata;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+
+/**
+ * Registry of configured database statements.
+ * <p>Each statement is prepared once, on its first use, and the {@link PreparedStatement} handle
+ * is kept for all later requests, so request handlers only bind and execute. Preparation is lazy
+ * because most statements reference schema created by {@code /LifeCycle/init}. Both preparation
+ * and execution are asynchronous. Statements are prepared with their configured {@link StatementOptions},
+ * so statements bound from the handle inherit consistency, timeout, page size, idempotence and execution profile.
+ * <p>Cached handles and their {@link RowEncoder}s are dropped on schema change, so {@code SELECT *}
+ * result metadata is never stale. Dropped statement is prepared again with a generation comment appended
+ * to its query, because driver's own prepared statement cache would return the stale handle.
+ * {@code UNPREPARED} responses from a node which lost its statement cache are handled by the driver itself:
+ * it re-prepares the cached handle's query on that node and retries the request.
+ */
+public class StatementRegistry extends SchemaChangeListenerBase {
+
+    private static final Logger LOGGER = Logger.getLogger(StatementRegistry.class.getName());
+
+    private final Map<String, Handle> handles;
+    private final Counter prepares;
+    private final Counter lookups;
+    private final Counter misses;
+    private final Counter speculativeFired;
+    private final Counter speculativeWon;
+    private final SlowQueryLog slowQueries;
+    private final CompletableFuture<CqlSession> attached;
+    private volatile CqlSession session;
+
+    /**
+     * Creates an instance of configured statements registry.
+     *
+     * @param statements configured statements with their execution options
+     * @param slowQueries log of slow statement executions
+     */
+    public StatementRegistry(final Map<String, StatementOptions> statements, final SlowQueryLog slowQueries) {
+        final Map<String, Handle> handlesMap = new HashMap<>(statements.size());
+        statements.forEach((name, options) -> {
+            handlesMap.put(name, new Handle(name, options));
+            LOGGER.fine(() -> String.format("Statement %s: %s", name, options));
+        });
+        this.handles = Map.copyOf(handlesMap);
+        this.slowQueries = slowQueries;
+        this.attached = new CompletableFuture<>();
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.prepares = metrics.counter("statements.prepares");
+        this.lookups = metrics.counter("statements.lookups");
+        this.misses = metrics.counter("statements.misses");
+        this.speculativeFired = metrics.counter("speculative.fired");
+        this.speculativeWon = metrics.counter("speculative.won");
+        metrics.register(
+                Metadata.builder()
+                        .withName("statements.hitRate")
+                        .withDescription("Ratio of statement lookups served by already prepared handle")
+                        .withType(MetricType.GAUGE)
+                        .withUnit(MetricUnits.PERCENT)
+                        .build(),
+                (Gauge<Double>) this::hitRate);
+    }
+
+    /**
+     * Attach database session used to prepare statements.
+     * Session is built after this registry, because registry must be registered
+     * as its schema change listener.
+     *
+     * @param session Cassandra database session
+     */
+    public void attach(final CqlSession session) {
+        this.session = session;
+        attached.complete(session);
+    }
+
+    /**
+     * Database session, completed when session is attached.
+     * Session is built asynchronously while web server is started, requests which must not fail
+     * before the session is connected should wait for it.
+     *
+     * @return attached database session
+     */
+    public CompletionStage<CqlSession> attached() {
+        return attached;
+    }
+
+    /**
+     * Returns handle of configured statement.
+     * Handle should be retrieved once and kept by the caller.
+     *
+     * @param name statement name
+     * @return statement handle
+     * @throws RemoteTestException when no such statement is configured
+     */
+    public Handle handle(final String name) {
+        final Handle handle = handles.get(name);
+        if (handle == null) {
+            throw new RemoteTestException(String.format("Statement %s is not configured.", name));
+        }
+        return handle;
+    }
+
+    /**
+     * Returns CQL text of configured statement.
+     * Used for statements which are executed once and shall not be prepared, e.g. DDL.
+     *
+     * @param name statement name
+     * @return CQL text of the statement
+     * @throws RemoteTestException when no such statement is configured
+     */
+    public String cql(final String name) {
+        return handle(name).options.cql();
+    }
+
+    /**
+     * Returns configured statement with its execution options.
+     * Used for statements which are executed once and shall not be prepared, e.g. DDL.
+     *
+     * @param name statement name
+     * @return simple statement
+     * @throws RemoteTestException when no such statement is configured
+     */
+    public SimpleStatement statement(final String name) {
+        return handle(name).options.statement();
+    }
+
+    /**
+     * Drops all prepared statement handles. Statements will be prepared again on next use.
+     */
+    public void invalidate() {
+        handles.values().forEach(Handle::invalidate);
+    }
+
+    /**
+     * Ratio of statement lookups which did not have to prepare the statement.
+     *
+     * @return hit rate in percents
+     */
+    public double hitRate() {
+        final long total = lookups.getCount();
+        return total > 0 ? 100d * (total - misses.getCount()) / total : 0d;
+    }
+
+    @Override
+    public void onKeyspaceDropped(final KeyspaceMetadata keyspace) {
+        LOGGER.fine(() -> String.format("Keyspace %s dropped, invalidating prepared statements", keyspace.getName()));
+        invalidate();
+    }
+
+    @Override
+    public void onTableDropped(final TableMetadata table) {
+        LOGGER.fine(() -> String.format("Table %s dropped, invalidating prepared statements", table.getName()));
+        invalidate();
+    }
+
+    @Override
+    public void onTableUpdated(final TableMetadata current, final TableMetadata previous) {
+        LOGGER.fine(() -> String.format("Table %s updated, invalidating prepared statements", current.getName()));
+        invalidate();
+    }
+
+    /**
+     * Configured statement with lazily prepared {@link PreparedStatement} handle.
+     */
+    public final class Handle {
+
+        private final String name;
+        private final StatementOptions options;
+        private volatile PreparedStatement prepared;
+        private volatile RowEncoder encoder;
+        // Preparation in progress, guarded by this handle.
+        private CompletableFuture<PreparedStatement> preparing;
+        // Number of invalidations, guarded by this handle.
+        private int generation;
+
+        private Handle(final String name, final StatementOptions options) {
+            this.name = name;
+            this.options = options;
+            this.prepared = null;
+            this.encoder = null;
+            this.preparing = null;
+            this.generation = 0;
+        }
+
+        /**
+         * Returns prepared statement. Statement is prepared asynchronously on first call.
+         *
+         * @return prepared statement
+         */
+        public CompletionStage<PreparedStatement> prepared() {
+            lookups.inc();
+            final PreparedStatement ps = prepared;
+            return ps != null ? CompletableFuture.completedFuture(ps) : prepare();
+        }
+
+        /**
+         * Binds values to prepared statement and executes it asynchronously.
+         *
+         * @param values values to bind
+         * @return statement execution result
+         */
+        public CompletionStage<AsyncResultSet> executeAsync(final Object... values) {
+            return executeAsync(UnaryOperator.identity(), values);
+        }
+
+        /**
+         * Binds values to prepared statement, customizes bound statement and executes it asynchronously.
+         * Customizer may set execution attributes, e.g. page size or paging state.
+         *
+         * @param customizer bound statement customizer
+         * @param values values to bind
+         * @return statement execution result
+         */
+        public CompletionStage<AsyncResultSet> executeAsync(final UnaryOperator<BoundStatement> customizer,
+                                                            final Object... values) {
+            lookups.inc();
+            final PreparedStatement ps = prepared;
+            if (ps != null) {
+                return execute(customizer.apply(ps.bind(values)));
+            }
+            return prepare().thenCompose(preparedStatement -> execute(customizer.apply(preparedStatement.bind(values))));
+        }
+
+        /*
+         * Executes already bound statement asynchronously.
+         * Execution is checked by slow query log and its speculative executions are recorded.
+         *
+         * @param statement statement bound from this handle's prepared statement
+         * @return statement execution result
+         */
+        CompletionStage<AsyncResultSet> execute(final BoundStatement statement) {
+            final BoundStatement sampled = slowQueries.sample(statement);
+            final long start = System.nanoTime();
+            return session().executeAsync(sampled).whenComplete((rs, t) -> {
+                if (rs != null) {
+                    executed(rs.getExecutionInfo());
+                }
+                slowQueries.completed(name, sampled, start, rs, t);
+            });
+        }
+
+        /**
+         * Returns JSON encoder of rows returned by this statement.
+         * Encoder is compiled from result set definitions of the prepared statement and kept
+         * until rows with different columns are returned, e.g. after table schema change.
+         *
+         * @param row row returned by this statement
+         * @return row encoder
+         */
+        public RowEncoder encoder(final Row row) {
+            final RowEncoder current = encoder;
+            final ColumnDefinitions definitions = row.getColumnDefinitions();
+            if (current != null && current.matches(definitions)) {
+                return current;
+            }
+            final RowEncoder compiled = RowEncoder.compile(definitions);
+            encoder = compiled;
+            LOGGER.finest(() -> String.format("Compiled row encoder of statement %s", name));
+            return compiled;
+        }
+
+        /**
+         * Statement name.
+         *
+         * @return name of the statement
+         */
+        public String name() {
+            return name;
+        }
+
+        // Concurrent requests hitting cold statement shall prepare it only once.
+        private synchronized CompletionStage<PreparedStatement> prepare() {
+            final PreparedStatement ps = prepared;
+            if (ps != null) {
+                return CompletableFuture.completedFuture(ps);
+            }
+            final CompletableFuture<PreparedStatement> current = preparing;
+            if (current != null) {
+                return current;
+            }
+            misses.inc();
+            final CompletableFuture<PreparedStatement> future = session().prepareAsync(statement()).toCompletableFuture();
+            preparing = future;
+            // Statement cached by the driver completes the future at once and clears preparing on this thread.
+            future.whenComplete((preparedStatement, t) -> prepared(future, preparedStatement));
+            return future;
+        }
+
+        private synchronized void prepared(final CompletableFuture<PreparedStatement> future, final PreparedStatement ps) {
+            // Handle may have been invalidated while statement was being prepared.
+            if (preparing == future) {
+                preparing = null;
+                if (ps != null) {
+                    prepared = ps;
+                    encoder = RowEncoder.compile(ps.getResultSetDefinitions());
+                    prepares.inc();
+                    LOGGER.finest(() -> String.format("Prepared statement %s", name));
+                }
+            }
+        }
+
+        private synchronized void invalidate() {
+            prepared = null;
+            encoder = null;
+            preparing = null;
+            generation++;
+        }
+
+        // Driver keeps prepared statements cached by their query and would return the invalidated one
+        // with stale result metadata, so statement is prepared again with query text unique to this generation.
+        private SimpleStatement statement() {
+            final SimpleStatement statement = options.statement();
+            return generation == 0
+                    ? statement
+                    : statement.setQuery(String.format("%s /* generation %d */", statement.getQuery(), generation));
+        }
+
+    }
+
+    // Speculative execution won when the response came from other than the initial execution.
+    private void executed(final ExecutionInfo info) {
+        final int fired = info.getSpeculativeExecutionCount();
+        if (fired > 0) {
+            speculativeFired.inc(fired);
+            if (info.getSuccessfulExecutionIndex() > 0) {
+                speculativeWon.inc();
+            }
+        }
+    }
+
+    /*
+     * Database session used to prepare and execute the statements.
+     *
+     * @return Cassandra database session
+     * @throws RemoteTestException when session is not attached yet
+     */
+    CqlSession session() {
+        final CqlSession currentSession = session;
+        if (currentSession == null) {
+            throw new RemoteTestException("Database session is not available.");
+        }
+        return currentSession;
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+
+/**
+ * Asynchronous writer of statement executions with bounded number of executions in flight.
+ * <p>Writer is fed by single producer. Each {@link #write(Object...)} call starts statement execution
+ * immediately and returns permit to write next row. Permit is completed when number of executions
+ * in flight is below the window size, so producer which waits for the permit never has more than
+ * window size executions in flight.
+ */
+public final class WindowedWriter {
+
+    // Maximum number of failure messages kept for the summary
+    private static final int MAX_ERRORS = 10;
+
+    private static final CompletableFuture<Void> PERMIT = CompletableFuture.completedFuture(null);
+
+    private final StatementRegistry.Handle stmt;
+    private final int window;
+    private final long start;
+    private final CompletableFuture<Summary> done;
+    private final List<String> errors;
+    // Writer state, guarded by this
+    private int inFlight;
+    private long rows;
+    private long written;
+    private long failed;
+    private boolean finished;
+    // Producer waiting for the permit, guarded by this
+    private CompletableFuture<Void> waiting;
+
+    /**
+     * Creates an instance of windowed writer.
+     *
+     * @param stmt statement to execute for each row
+     * @param window maximum number of executions in flight
+     */
+    public WindowedWriter(final StatementRegistry.Handle stmt, final int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException(String.format("Writer window size %d is not positive.", window));
+        }
+        this.stmt = stmt;
+        this.window = window;
+        this.start = System.nanoTime();
+        this.done = new CompletableFuture<>();
+        this.errors = new ArrayList<>(MAX_ERRORS);
+        this.inFlight = 0;
+        this.rows = 0;
+        this.written = 0;
+        this.failed = 0;
+        this.finished = false;
+        this.waiting = null;
+    }
+
+    /**
+     * Execute statement with provided values bound.
+     *
+     * @param values values to bind
+     * @return permit to write next row, completed when window has room for it
+     */
+    public CompletionStage<Void> write(final Object... values) {
+        synchronized (this) {
+            rows++;
+            inFlight++;
+        }
+        CompletionStage<?> execution;
+        try {
+            execution = stmt.executeAsync(values);
+        } catch (RuntimeException ex) {
+            execution = CompletableFuture.failedFuture(ex);
+        }
+        execution.whenComplete((rs, t) -> completed(t));
+        synchronized (this) {
+            if (inFlight < window) {
+                return PERMIT;
+            }
+            waiting = new CompletableFuture<>();
+            return waiting;
+        }
+    }
+
+    /**
+     * Record row which was rejected by the producer and was not written.
+     *
+     * @param message failure message
+     */
+    public synchronized void reject(final String message) {
+        rows++;
+        failed++;
+        error(message);
+    }
+
+    /**
+     * Signal end of the rows. Summary is completed when all executions in flight are finished.
+     *
+     * @return writer summary
+     */
+    public CompletionStage<Summary> finish() {
+        final boolean complete;
+        synchronized (this) {
+            finished = true;
+            complete = inFlight == 0;
+        }
+        if (complete) {
+            done.complete(summary());
+        }
+        return done;
+    }
+
+    /**
+     * Rows summary, available before writer is finished too.
+     *
+     * @return writer summary
+     */
+    public synchronized Summary summary() {
+        return new Summary(rows, written, failed, System.nanoTime() - start, List.copyOf(errors));
+    }
+
+    // Statement execution completed.
+    private void completed(final Throwable t) {
+        CompletableFuture<Void> permit = null;
+        boolean complete = false;
+        synchronized (this) {
+            inFlight--;
+            if (t == null) {
+                written++;
+            } else {
+                failed++;
+                error(CassandraService.unwrap(t).getMessage());
+            }
+            if (waiting != null && inFlight < window) {
+                permit = waiting;
+                waiting = null;
+            }
+            if (finished && inFlight == 0) {
+                complete = true;
+            }
+        }
+        // Callbacks must not run while holding the lock.
+        if (permit != null) {
+            permit.complete(null);
+        }
+        if (complete) {
+            done.complete(summary());
+        }
+    }
+
+    // Caller must hold the lock.
+    private void error(final String message) {
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(message);
+        }
+    }
+
+    /**
+     * Summary of written rows.
+     */
+    public static final class Summary {
+
+        private final long rows;
+        private final long written;
+        private final long failed;
+        private final long elapsed;
+        private final List<String> errors;
+
+        private Summary(final long rows, final long written, final long failed, final long elapsed, final List<String> errors) {
+            this.rows = rows;
+            this.written = written;
+            this.failed = failed;
+            this.elapsed = elapsed;
+            this.errors = Collections.unmodifiableList(errors);
+        }
+
+        /**
+         * Number of rows passed to the writer.
+         *
+         * @return number of rows
+         */
+        public long rows() {
+            return rows;
+        }
+
+        /**
+         * Number of successfully written rows.
+         *
+         * @return number of written rows
+         */
+        public long written() {
+            return written;
+        }
+
+        /**
+         * Number of failed rows.
+         *
+         * @return number of failed rows
+         */
+        public long failed() {
+            return failed;
+        }
+
+        /**
+         * Time elapsed since writer was created in nanoseconds.
+         *
+         * @return elapsed time
+         */
+        public long elapsed() {
+            return elapsed;
+        }
+
+        /**
+         * Written rows per second.
+         *
+         * @return write throughput
+         */
+        public double rate() {
+            return elapsed > 0 ? written * 1e9 / elapsed : 0d;
+        }
+
+        /**
+         * Summary as JSON object.
+         *
+         * @return JSON object with rows counters, elapsed time in milliseconds and first failure messages
+         */
+        public JsonObject toJson() {
+            final JsonArrayBuilder jab = Json.createArrayBuilder();
+            errors.forEach(jab::add);
+            return Json.createObjectBuilder()
+                    .add("rows", rows)
+                    .add("written", written)
+                    .add("failed", failed)
+                    .add("elapsed", elapsed / 1_000_000)
+                    .add("errors", jab)
+                    .build();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d written=%d failed=%d elapsed=%dms rate=%.1f/s",
+                    rows, written, failed, elapsed / 1_000_000, rate());
+        }
+
+    }
+
+}
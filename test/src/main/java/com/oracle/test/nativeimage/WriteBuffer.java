@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Timer;
+
+/**
+ * Write-behind buffer of pokemon table inserts and updates.
+ * <p>Writes are kept in the buffer for configured window and merged per primary key, so only
+ * the last state of each row is written: update of pending insert changes the inserted name,
+ * insert replaces pending update. Buffer is flushed by single background thread and next flush
+ * starts only after previous one completed, so writes of the same row are never reordered.
+ * <p>Requests are acknowledged when their write was accepted into the buffer, or in strict mode
+ * when it was flushed to the database.
+ */
+public final class WriteBuffer {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBuffer.class.getName());
+
+    private final boolean enabled;
+    private final boolean strict;
+    private final long window;
+    private final int maxPending;
+    private final int maxInFlight;
+    private final StatementRegistry.Handle insertStmt;
+    private final StatementRegistry.Handle updateStmt;
+    private final ScheduledExecutorService scheduler;
+    private final Counter accepted;
+    private final Counter flushed;
+    private final Counter failed;
+    private final Timer flushTimer;
+    // Buffer state, guarded by this
+    private Map<Integer, Write> pending;
+    private CompletableFuture<Void> lastFlush;
+    private boolean closed;
+
+    private WriteBuffer(final boolean enabled,
+                        final boolean strict,
+                        final long window,
+                        final int maxPending,
+                        final int maxInFlight,
+                        final StatementRegistry statements) {
+        this.enabled = enabled;
+        this.strict = strict;
+        this.window = window;
+        this.maxPending = maxPending;
+        this.maxInFlight = maxInFlight;
+        this.insertStmt = statements.handle("insert");
+        this.updateStmt = statements.handle("update");
+        this.pending = new LinkedHashMap<>();
+        this.lastFlush = CompletableFuture.completedFuture(null);
+        this.closed = false;
+        final MetricRegistry metrics = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.accepted = metrics.counter("writeBuffer.accepted");
+        this.flushed = metrics.counter("writeBuffer.flushed");
+        this.failed = metrics.counter("writeBuffer.failed");
+        this.flushTimer = metrics.timer("writeBuffer.flushLatency");
+        metrics.register(
+                Metadata.builder()
+                        .withName("writeBuffer.queueDepth")
+                        .withDescription("Rows waiting for flush")
+                        .withType(MetricType.GAUGE)
+                        .build(),
+                (Gauge<Integer>) this::queueDepth);
+        metrics.register(
+                Metadata.builder()
+                        .withName("writeBuffer.mergeRatio")
+                        .withDescription("Ratio of accepted writes merged into other pending writes")
+                        .withType(MetricType.GAUGE)
+                        .withUnit(MetricUnits.PERCENT)
+                        .build(),
+                (Gauge<Double>) this::mergeRatio);
+        if (enabled) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                final Thread thread = new Thread(task, "write-buffer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.scheduler.schedule(this::tick, window, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Creates write buffer from {@code app.write-buffer} configuration node.
+     *
+     * @param config write buffer configuration
+     * @param statements configured statements registry
+     * @return write buffer, disabled buffer must not be used for writes
+     */
+    public static WriteBuffer create(final Config config, final StatementRegistry statements) {
+        final boolean enabled = config.get("enabled").asBoolean().orElse(false);
+        final String ack = config.get("ack").asString().orElse("accepted");
+        if (!"accepted".equals(ack) && !"strict".equals(ack)) {
+            throw new IllegalArgumentException(String.format("Unknown write buffer acknowledgement mode: %s", ack));
+        }
+        final long window = config.get("window").asLong().orElse(50L);
+        final int maxPending = config.get("max-pending").asInt().orElse(10_000);
+        final int maxInFlight = config.get("max-in-flight").asInt().orElse(128);
+        LOGGER.info(() -> String.format("Write buffer enabled: %b, ack: %s, window: %d ms", enabled, ack, window));
+        return new WriteBuffer(enabled, "strict".equals(ack), window, maxPending, maxInFlight, statements);
+    }
+
+    /**
+     * Whether writes shall go through this buffer.
+     *
+     * @return value of {@code true} when buffer is enabled
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffer row insert.
+     *
+     * @param id row primary key
+     * @param name pokemon name
+     * @param type pokemon type
+     * @return write flush, completed when row was written to the database
+     * @throws RemoteTestException when buffer is full or closed
+     */
+    public CompletionStage<Void> insert(final int id, final String name, final String type) {
+        return write(id, name, type);
+    }
+
+    /**
+     * Buffer row update.
+     *
+     * @param id row primary key
+     * @param name new pokemon name
+     * @return write flush, completed when row was written to the database
+     * @throws RemoteTestException when buffer is full or closed
+     */
+    public CompletionStage<Void> update(final int id, final String name) {
+        return write(id, name, null);
+    }
+
+    /**
+     * Acknowledgement of buffered write according to acknowledgement mode.
+     *
+     * @param flush write flush returned by {@code insert} or {@code update}
+     * @return acknowledgement stage
+     */
+    public CompletionStage<Void> ack(final CompletionStage<Void> flush) {
+        return strict ? flush : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Drop pending write of the row, e.g. before the row is deleted.
+     * Dropped write is completed as flushed.
+     *
+     * @param id row primary key
+     * @return stage completed when write of the row which may be already in flight is finished
+     */
+    public CompletionStage<Void> discard(final int id) {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Write write;
+        final CompletableFuture<Void> inFlight;
+        synchronized (this) {
+            write = pending.remove(id);
+            inFlight = lastFlush;
+        }
+        if (write != null) {
+            write.flushed.complete(null);
+        }
+        return inFlight;
+    }
+
+    /**
+     * Flush all pending writes now, buffer keeps accepting writes.
+     *
+     * @return stage completed when writes pending at the time of the call were flushed
+     */
+    public CompletionStage<Void> flushPending() {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        synchronized (this) {
+            lastFlush = lastFlush.thenCompose(v -> flush());
+            return lastFlush;
+        }
+    }
+
+    /**
+     * Stop accepting writes and flush all pending writes.
+     *
+     * @return stage completed when all writes were flushed
+     */
+    public CompletionStage<Void> drain() {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> drained;
+        synchronized (this) {
+            closed = true;
+            lastFlush = lastFlush.thenCompose(v -> flush());
+            drained = lastFlush;
+        }
+        scheduler.shutdown();
+        return drained.whenComplete((v, t) -> LOGGER.info("Write buffer drained"));
+    }
+
+    /**
+     * Number of rows waiting for flush.
+     *
+     * @return pending rows
+     */
+    public synchronized int queueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Ratio of accepted writes which did not need own database write.
+     *
+     * @return merge ratio in percents
+     */
+    public double mergeRatio() {
+        final long total = accepted.getCount();
+        return total > 0 ? Math.max(0d, 100d * (total - flushed.getCount() - failed.getCount() - queueDepth()) / total) : 0d;
+    }
+
+    private CompletionStage<Void> write(final int id, final String name, final String type) {
+        final Write write;
+        synchronized (this) {
+            if (closed) {
+                throw new RemoteTestException("Write buffer is closed.");
+            }
+            final Write current = pending.get(id);
+            if (current == null) {
+                if (pending.size() >= maxPending) {
+                    throw new RemoteTestException("Write buffer is full.");
+                }
+                write = new Write(id, name, type);
+                pending.put(id, write);
+            } else {
+                write = current;
+                write.name = name;
+                // Insert replaces pending update, update keeps type of pending insert.
+                if (type != null) {
+                    write.type = type;
+                }
+            }
+        }
+        accepted.inc();
+        return write.flushed;
+    }
+
+    // Scheduled flush, next flush is scheduled after this one completed.
+    private void tick() {
+        final CompletableFuture<Void> flush;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            lastFlush = lastFlush.thenCompose(v -> flush());
+            flush = lastFlush;
+        }
+        flush.whenComplete((v, t) -> {
+            try {
+                scheduler.schedule(this::tick, window, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException ex) {
+                LOGGER.finest(() -> String.format("Write buffer flush was not scheduled: %s", ex.getMessage()));
+            }
+        });
+    }
+
+    // Write all pending rows with bounded number of writes in flight.
+    private CompletableFuture<Void> flush() {
+        final List<Write> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            batch = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+        }
+        final long start = System.nanoTime();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final Iterator<Write> writes = batch.iterator();
+        // Number of lanes still writing, each lane has one write in flight.
+        final int[] lanes = {Math.min(maxInFlight, batch.size())};
+        final int count = lanes[0];
+        for (int i = 0; i < count; i++) {
+            lane(writes, lanes, done);
+        }
+        return done.whenComplete((v, t) -> {
+            flushTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            LOGGER.finest(() -> String.format("Flushed %d rows", batch.size()));
+        });
+    }
+
+    // Execute writes one by one until batch is exhausted. Writes completed synchronously, e.g. failed
+    // without session or rejected by driver throttler, continue in the loop so the stack does not grow
+    // with batch size, asynchronous completion continues the lane from its callback.
+    private void lane(final Iterator<Write> writes, final int[] lanes, final CompletableFuture<Void> done) {
+        Write write;
+        while ((write = next(writes, lanes, done)) != null) {
+            final CompletableFuture<?> execution = execute(write);
+            final boolean sync = execution.isDone();
+            final Write current = write;
+            execution.whenComplete((rs, t) -> {
+                completed(current, t);
+                if (!sync) {
+                    lane(writes, lanes, done);
+                }
+            });
+            if (!sync) {
+                return;
+            }
+        }
+    }
+
+    // Next write of the batch, null when batch is exhausted and lane has ended.
+    private static Write next(final Iterator<Write> writes, final int[] lanes, final CompletableFuture<Void> done) {
+        synchronized (lanes) {
+            if (writes.hasNext()) {
+                return writes.next();
+            }
+            lanes[0]--;
+            if (lanes[0] == 0) {
+                done.complete(null);
+            }
+            return null;
+        }
+    }
+
+    private CompletableFuture<?> execute(final Write write) {
+        try {
+            return (write.type == null
+                    ? updateStmt.executeAsync(write.name, write.id)
+                    : insertStmt.executeAsync(write.id, write.name, write.type)).toCompletableFuture();
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private void completed(final Write write, final Throwable t) {
+        if (t == null) {
+            flushed.inc();
+            write.flushed.complete(null);
+        } else {
+            failed.inc();
+            LOGGER.log(Level.WARNING, t, () -> String.format("Buffered write of row %d failed: %s", write.id, t.getMessage()));
+            write.flushed.completeExceptionally(CassandraService.unwrap(t));
+        }
+    }
+
+    // Pending write of single row, type is null for update.
+    private static final class Write {
+
+        private final int id;
+        private final CompletableFuture<Void> flushed;
+        private String name;
+        private String type;
+
+        private Write(final int id, final String name, final String type) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+            this.flushed = new CompletableFuture<>();
+        }
+
+    }
+
+}
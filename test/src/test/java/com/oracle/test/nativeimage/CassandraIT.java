@@ -16,17 +16,24 @@
 package com.oracle.test.nativeimage;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
+import javax.json.Json;
+import javax.json.JsonArray;
 import javax.json.JsonObject;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 
+import io.helidon.common.http.Http;
 import io.helidon.tests.integration.tools.client.HelidonProcessRunner;
 import io.helidon.tests.integration.tools.client.HelidonTestException;
 import io.helidon.tests.integration.tools.client.TestClient;
 import io.helidon.tests.integration.tools.client.TestServiceClient;
+import io.helidon.webclient.WebClientRequestBuilder;
+import io.helidon.webclient.WebClientResponse;
 
+import com.datastax.oss.driver.api.core.CqlSession;
 import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -40,11 +47,20 @@ public class CassandraIT {
 
     private static final Logger LOGGER = Logger.getLogger(CassandraIT.class.getName());
 
+    // Timeout in seconds and poll interval in miliseconds while waiting for schema change.
+    private static final int SCHEMA_TIMEOUT = 10;
+    private static final int SCHEMA_SLEEP_MILIS = 250;
+
     private final TestServiceClient testClient = TestClient.builder()
             .port(HelidonProcessRunner.HTTP_PORT)
             .service("Cassandra")
             .build();
 
+    private final TestServiceClient lifeCycleClient = TestClient.builder()
+            .port(HelidonProcessRunner.HTTP_PORT)
+            .service("LifeCycle")
+            .build();
+
     // Test Cassandra ping statement.
     @Test
     public void testPing() {
@@ -61,6 +77,41 @@ public class CassandraIT {
         
     }
 
+    // Test readiness and startup phases after database was initialized
+    @Test
+    void testReady() {
+        LOGGER.fine(() -> "Running testReady");
+        try {
+            JsonObject data = lifeCycleClient.callServiceAndGetData("ready").asJsonObject();
+            assertThat(data.getBoolean("ready"), is(true));
+            assertThat(data.getJsonObject("phases").keySet(),
+                       hasItems("config", "session", "metadata", "server", "health", "ready"));
+            assertThat(data.getJsonObject("database").getBoolean("reachable"), is(true));
+            assertThat(data.getJsonObject("database").getInt("connections"), greaterThan(0));
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    // Test liveness probe answered from cached health check
+    @Test
+    void testLive() {
+        LOGGER.fine(() -> "Running testLive");
+        try {
+            JsonObject data = lifeCycleClient.callServiceAndGetData("live").asJsonObject();
+            assertThat(data.getBoolean("live"), is(true));
+            assertThat(data.getJsonObject("database").getJsonArray("nodes").isEmpty(), is(false));
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
     // Test select row from database table
     @Test
     void testSelect() {
@@ -97,6 +148,108 @@ public class CassandraIT {
         }
     }
 
+    // Test select multiple rows from database table
+    @Test
+    void testSelectMany() {
+        LOGGER.fine("Running testSelectMany");
+        try {
+            JsonValue dataValue = testClient
+                    .callServiceAndGetData(
+                            "selectMany",
+                            Map.of("ids", "1,999999,1"));
+            verifySelectMany(dataValue);
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    // Test select multiple rows from database table with ids in request content
+    @Test
+    void testSelectManyPost() {
+        LOGGER.fine("Running testSelectManyPost");
+        JsonObject response = testClient.webClient()
+                .post()
+                .path("/Cassandra/selectMany")
+                .submit(Json.createArrayBuilder().add(1).add(999999).add(1).build())
+                .flatMapSingle(res -> res.content().as(JsonObject.class))
+                .await(1, TimeUnit.MINUTES);
+        assertThat(response.getString("status"), equalTo("OK"));
+        verifySelectMany(response.get("data"));
+    }
+
+    private void verifySelectMany(JsonValue dataValue) {
+        assertThat(dataValue.getValueType(), equalTo(JsonValue.ValueType.ARRAY));
+        JsonArray data = dataValue.asJsonArray();
+        assertThat(data.size(), equalTo(3));
+        verifyJsonPokemon(data.get(0), Pokemon.POKEMNONS.get(1));
+        assertThat(data.getJsonObject(1).getInt("id"), equalTo(999999));
+        assertThat(data.getJsonObject(1).getBoolean("missing"), is(true));
+        verifyJsonPokemon(data.get(2), Pokemon.POKEMNONS.get(1));
+    }
+
+    // Test that statements are prepared again after table schema change
+    @Test
+    void testSchemaChange() {
+        LOGGER.fine("Running testSchemaChange");
+        try (CqlSession session = ServerLifeCycleExtension.openSession()) {
+            session.execute("ALTER TABLE test.pokemon ADD evolution text");
+            try {
+                testClient.callServiceAndGetData(
+                        "insert",
+                        Map.of("id", "130", "name", "Gyarados", "type", "water"));
+                verifySchema(130, Pokemon.POKEMNONS.get(1), true);
+            } finally {
+                session.execute("ALTER TABLE test.pokemon DROP evolution");
+            }
+            testClient.callServiceAndGetData(
+                    "insert",
+                    Map.of("id", "131", "name", "Lapras", "type", "water"));
+            verifySchema(131, Pokemon.POKEMNONS.get(1), false);
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    // Schema change reaches the application asynchronously, wait until its rows have expected columns.
+    @SuppressWarnings("SleepWhileInLoop")
+    private void verifySchema(int id, Pokemon other, boolean added) {
+        long endTm = TimeUnit.SECONDS.toMillis(SCHEMA_TIMEOUT) + System.currentTimeMillis();
+        while (true) {
+            JsonObject row = testClient
+                    .callServiceAndGetData(
+                            "select",
+                            Map.of("id", String.valueOf(id)))
+                    .asJsonObject();
+            JsonArray rows = testClient
+                    .callServiceAndGetData(
+                            "selectMany",
+                            Map.of("ids", id + "," + other.getId()))
+                    .asJsonArray();
+            if (row.containsKey("evolution") == added
+                    && rows.getJsonObject(0).containsKey("evolution") == added
+                    && rows.getJsonObject(1).containsKey("evolution") == added) {
+                assertThat(row.getInt("id"), equalTo(id));
+                assertThat(rows.getJsonObject(0).getInt("id"), equalTo(id));
+                verifyJsonPokemon(rows.get(1), other);
+                return;
+            }
+            if (System.currentTimeMillis() > endTm) {
+                fail(String.format("Rows %s and %s do not match schema within %d seconds", row, rows, SCHEMA_TIMEOUT));
+            }
+            try {
+                Thread.sleep(SCHEMA_SLEEP_MILIS);
+            } catch (InterruptedException ie) {
+                LOGGER.warning(() -> String.format("Thread was interrupted: %s", ie.getMessage()));
+            }
+        }
+    }
+
     // Test update row in database table
     @Test
     void testUpdate() {
@@ -115,6 +268,32 @@ public class CassandraIT {
         }
     }
 
+    // Test that cached row is invalidated by update and delete
+    @Test
+    void testCacheInvalidation() {
+        LOGGER.fine("Running testCacheInvalidation");
+        try {
+            testClient.callServiceAndGetData(
+                    "insert",
+                    Map.of("id", "110", "name", "Eevee", "type", "normal"));
+            verifyPokemon(110, new Pokemon(110, "Eevee", "normal"));
+            verifyPokemon(110, new Pokemon(110, "Eevee", "normal"));
+            testClient.callServiceAndGetData(
+                    "update",
+                    Map.of("id", "110", "name", "Vaporeon"));
+            verifyPokemon(110, new Pokemon(110, "Vaporeon", "normal"));
+            testClient.callServiceAndGetData(
+                    "delete",
+                    Map.of("id", "110"));
+            verifyPokemon(110, null);
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
     // Test delete row from database table
     @Test
     void testDelete() {
@@ -134,6 +313,150 @@ public class CassandraIT {
         }
     }
 
+    // Test streamed insert of rows from newline delimited JSON
+    @Test
+    void testIngest() {
+        LOGGER.fine("Running testIngest");
+        StringBuilder sb = new StringBuilder();
+        for (int id = 200; id < 300; id++) {
+            sb.append(String.format("{\"id\":%d,\"name\":\"Pokemon %d\",\"type\":\"normal\"}\n", id, id));
+        }
+        sb.append("not a JSON row\n");
+        // Ids which would be truncated to 301 and 1
+        sb.append("{\"id\":301.5,\"name\":\"Fraction\",\"type\":\"normal\"}\n");
+        sb.append("{\"id\":4294967297,\"name\":\"Overflow\",\"type\":\"normal\"}\n");
+        sb.append("{\"id\":300,\"name\":\"Mew\",\"type\":\"psychic\"}");
+        try {
+            WebClientResponse res = testClient.webClient()
+                    .post()
+                    .path("/Cassandra/ingest")
+                    .submit(sb.toString())
+                    .await(1, TimeUnit.MINUTES);
+            assertThat(res.status(), equalTo(Http.Status.BAD_REQUEST_400));
+            JsonObject response = res.content().as(JsonObject.class).await(1, TimeUnit.MINUTES);
+            assertThat(response.getString("status"), equalTo("OK"));
+            JsonObject summary = response.getJsonObject("data");
+            assertThat(summary.getInt("rows"), equalTo(104));
+            assertThat(summary.getInt("written"), equalTo(101));
+            assertThat(summary.getInt("failed"), equalTo(3));
+            verifyPokemon(250, new Pokemon(250, "Pokemon 250", "normal"));
+            verifyPokemon(300, new Pokemon(300, "Mew", "psychic"));
+            verifyPokemon(1, Pokemon.POKEMNONS.get(1));
+            verifyPokemon(301, null);
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    // Test streamed scan of whole database table
+    @Test
+    void testScan() {
+        LOGGER.fine("Running testScan");
+        verifyScan(testClient.webClient()
+                .get()
+                .path("/Cassandra/scan"));
+    }
+
+    // Test streamed scan of token range covering whole database table
+    @Test
+    void testScanRange() {
+        LOGGER.fine("Running testScanRange");
+        verifyScan(testClient.webClient()
+                .get()
+                .path("/Cassandra/scan")
+                .queryParam("from", String.valueOf(Long.MIN_VALUE))
+                .queryParam("to", String.valueOf(Long.MAX_VALUE)));
+    }
+
+    // Test that repeated init does not seed current dataset again
+    @Test
+    void testInitIdempotent() {
+        LOGGER.fine("Running testInitIdempotent");
+        try {
+            lifeCycleClient.callServiceAndGetData("init");
+            JsonObject data = lifeCycleClient.callServiceAndGetData("init").asJsonObject();
+            assertThat(data.getBoolean("seeded"), is(false));
+            verifyPokemon(1, Pokemon.POKEMNONS.get(1));
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    // Test that reset after write restores seeded dataset
+    @Test
+    void testReset() {
+        LOGGER.fine("Running testReset");
+        Pokemon pokemon = Pokemon.POKEMNONS.get(1);
+        try {
+            testClient.callServiceAndGetData(
+                    "update",
+                    Map.of("id", "1", "name", "Ivysaur"));
+            testClient.callServiceAndGetData(
+                    "insert",
+                    Map.of("id", "140", "name", "Kabuto", "type", "rock"));
+            verifyPokemon(1, new Pokemon(1, "Ivysaur", pokemon.getType()));
+            JsonObject data = lifeCycleClient.callServiceAndGetData("reset").asJsonObject();
+            assertThat(data.getBoolean("seeded"), is(true));
+            verifyPokemon(1, pokemon);
+            verifyPokemon(140, null);
+            data = lifeCycleClient.callServiceAndGetData("reset").asJsonObject();
+            assertThat(data.getBoolean("seeded"), is(false));
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    // Test that forced reset seeds current dataset again
+    @Test
+    void testResetForce() {
+        LOGGER.fine("Running testResetForce");
+        try {
+            lifeCycleClient.callServiceAndGetData("reset");
+            JsonObject data = lifeCycleClient
+                    .callServiceAndGetData("reset", Map.of("force", "true"))
+                    .asJsonObject();
+            assertThat(data.getBoolean("seeded"), is(true));
+            assertThat(data.getJsonObject("load").getInt("written"), equalTo(Pokemon.POKEMNONS.size()));
+            for (Pokemon pokemon : Pokemon.POKEMNONS.values()) {
+                verifyPokemon(pokemon.getId(), pokemon);
+            }
+            data = lifeCycleClient.callServiceAndGetData("init").asJsonObject();
+            assertThat(data.getBoolean("seeded"), is(false));
+        } catch (HelidonTestException te) {
+            fail(String.format(
+                    "Caught %s: %s",
+                    te.getClass().getSimpleName(),
+                    te.getMessage()));
+        }
+    }
+
+    private void verifyScan(WebClientRequestBuilder request) {
+        Pokemon pokemon = Pokemon.POKEMNONS.get(1);
+        JsonObject response = request
+                .request(JsonObject.class)
+                .await(1, TimeUnit.MINUTES);
+        assertThat(response.getString("status"), equalTo("OK"));
+        JsonObject data = response.getJsonObject("data");
+        assertThat(data.isNull("cursor"), is(true));
+        assertThat(data.getInt("pages"), greaterThanOrEqualTo(1));
+        JsonArray rows = data.getJsonArray("rows");
+        assertThat(rows.size(), greaterThanOrEqualTo(Pokemon.POKEMNONS.size() - 1));
+        JsonValue row = rows.stream()
+                .filter(value -> value.asJsonObject().getInt("id") == pokemon.getId())
+                .findFirst()
+                .orElse(null);
+        verifyJsonPokemon(row, pokemon);
+    }
+
     private void verifyPokemon(int id, Pokemon pokemon) {
         JsonValue dataValue = testClient
                 .callServiceAndGetData(
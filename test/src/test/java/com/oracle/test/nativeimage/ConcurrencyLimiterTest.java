@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.helidon.common.http.Http;
+import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.webclient.WebClient;
+import io.helidon.webclient.WebClientResponse;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.WebServer;
+
+import org.eclipse.microprofile.metrics.MetricFilter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Test adaptive concurrency limit and rejection of requests over the limit.
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // Limiter registers its metrics in the application registry.
+    @BeforeEach
+    void clearMetrics() {
+        RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION).removeMatching(MetricFilter.ALL);
+    }
+
+    // Test that limit grows while latency is stable and shrinks when latency rises
+    @Test
+    void testLimitShrinksUnderRisingLatency() {
+        ConcurrencyLimiter limiter = limiter(Map.of("initial-limit", "20", "min-limit", "4", "max-limit", "1000"));
+        for (int i = 0; i < 200; i++) {
+            limiter.sample(10 * MILLIS, limiter.limit());
+        }
+        int grown = limiter.limit();
+        assertThat(grown, greaterThan(20));
+        for (int i = 0; i < 100; i++) {
+            limiter.sample((10 + i) * MILLIS, limiter.limit());
+        }
+        assertThat(limiter.limit(), lessThan(grown / 2));
+        for (int i = 0; i < 200; i++) {
+            limiter.sample(1000 * MILLIS, limiter.limit());
+        }
+        assertThat(limiter.limit(), equalTo(4));
+    }
+
+    // Test that limit is not adjusted by latency of requests which did not use it
+    @Test
+    void testLimitNotAdjustedWhenUnused() {
+        ConcurrencyLimiter limiter = limiter(Map.of("initial-limit", "20"));
+        limiter.sample(10 * MILLIS, 1);
+        for (int i = 0; i < 100; i++) {
+            limiter.sample(1000 * MILLIS, 9);
+        }
+        assertThat(limiter.limit(), is(20));
+    }
+
+    // Test that requests over the limit are rejected and accepted again when requests in flight complete
+    @Test
+    void testRejectionAtLimit() {
+        ConcurrencyLimiter limiter = limiter(Map.of("initial-limit", "2", "min-limit", "2", "max-limit", "2"));
+        List<CompletableFuture<Void>> held = new ArrayList<>();
+        WebServer server = WebServer.builder(Routing.builder()
+                                                     .register("/Cassandra", limiter)
+                                                     .get("/Cassandra/select", (req, res) -> {
+                                                         CompletableFuture<Void> release = new CompletableFuture<>();
+                                                         synchronized (held) {
+                                                             held.add(release);
+                                                         }
+                                                         release.thenRun(() -> res.send("OK"));
+                                                     })
+                                                     .get("/Cassandra/scan", (req, res) -> res.send("OK")))
+                .port(0)
+                .build()
+                .start()
+                .await(10, TimeUnit.SECONDS);
+        try {
+            WebClient client = WebClient.builder()
+                    .baseUri("http://localhost:" + server.port())
+                    .build();
+            Single<WebClientResponse> first = client.get().path("/Cassandra/select").request();
+            Single<WebClientResponse> second = client.get().path("/Cassandra/select").request();
+            awaitHeld(held, 2);
+            WebClientResponse rejected = client.get().path("/Cassandra/select").request().await(10, TimeUnit.SECONDS);
+            assertThat(rejected.status(), is(Http.Status.SERVICE_UNAVAILABLE_503));
+            assertThat(rejected.headers().first(Http.Header.RETRY_AFTER).isPresent(), is(true));
+            // Paths which are not limited pass
+            assertThat(client.get().path("/Cassandra/scan").request().await(10, TimeUnit.SECONDS).status(),
+                       is(Http.Status.OK_200));
+            synchronized (held) {
+                held.forEach(release -> release.complete(null));
+            }
+            assertThat(first.await(10, TimeUnit.SECONDS).status(), is(Http.Status.OK_200));
+            assertThat(second.await(10, TimeUnit.SECONDS).status(), is(Http.Status.OK_200));
+            Single<WebClientResponse> third = client.get().path("/Cassandra/select").request();
+            awaitHeld(held, 3);
+            synchronized (held) {
+                held.get(2).complete(null);
+            }
+            assertThat(third.await(10, TimeUnit.SECONDS).status(), is(Http.Status.OK_200));
+            assertThat(limiter.limit(), is(2));
+        } finally {
+            server.shutdown().await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @SuppressWarnings("SleepWhileInLoop")
+    private static void awaitHeld(List<CompletableFuture<Void>> held, int count) {
+        long endTm = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (true) {
+            synchronized (held) {
+                if (held.size() >= count) {
+                    return;
+                }
+            }
+            if (System.currentTimeMillis() > endTm) {
+                throw new IllegalStateException(String.format("%d requests did not reach the handler", count));
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(ie);
+            }
+        }
+    }
+
+    private static ConcurrencyLimiter limiter(Map<String, String> properties) {
+        Map<String, String> config = new HashMap<>(properties);
+        config.put("enabled", "true");
+        return ConcurrencyLimiter.create(Config.create(ConfigSources.create(config))).orElseThrow();
+    }
+
+}
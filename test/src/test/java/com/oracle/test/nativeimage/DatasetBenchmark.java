@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Measure synthetic dataset generation rate and skew of key distributions.
+ * <p>Generator must produce the same rows for the same seed in any order. Key samplers report share
+ * of samples hitting the most popular 1% of keys, which is 1% for uniform distribution.
+ */
+public class DatasetBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(DatasetBenchmark.class.getName());
+
+    private static final int ROWS = 1_000_000;
+    private static final int KEYS = 100_000;
+    private static final int SAMPLES = 10_000_000;
+
+    // Generate rows and verify they are reproducible and follow configured cardinality.
+    @Test
+    void benchmarkGenerator() throws IOException {
+        final PokemonGenerator generator = generator(42);
+        final Set<String> names = new HashSet<>();
+        final Set<String> types = new HashSet<>();
+        final long start = System.nanoTime();
+        long bytes = 0;
+        try (BulkLoader.Source source = generator.source()) {
+            Object[] row;
+            while ((row = source.next()) != null) {
+                names.add((String) row[1]);
+                types.add((String) row[2]);
+                bytes += ((String) row[1]).length() + ((String) row[2]).length();
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        LOGGER.info(String.format("Generated %d rows in %d ms (%.0f rows/s), %d names, %d types, %.1f bytes per row",
+                                  ROWS, elapsed / 1_000_000, ROWS * 1e9 / elapsed, names.size(), types.size(),
+                                  (double) bytes / ROWS));
+        assertThat(names.size(), lessThanOrEqualTo(10_000));
+        assertThat(names.size(), greaterThan(1_000));
+        assertThat(types.size(), is(18));
+        // Rows are generated from the seed and id only.
+        final PokemonGenerator same = generator(42);
+        final PokemonGenerator other = generator(43);
+        int differs = 0;
+        for (int id = ROWS; id > ROWS - 1000; id--) {
+            assertThat(same.row(id).getName(), is(generator.row(id).getName()));
+            assertThat(same.row(id).getType(), is(generator.row(id).getType()));
+            if (!other.row(id).getName().equals(generator.row(id).getName())) {
+                differs++;
+            }
+        }
+        assertThat(differs, greaterThan(900));
+    }
+
+    // Compare share of samples hitting the most popular keys.
+    @Test
+    void benchmarkKeySampler() {
+        final double uniform = hotShare(KeySampler.Distribution.UNIFORM);
+        final double zipfian = hotShare(KeySampler.Distribution.ZIPFIAN);
+        final double hotspot = hotShare(KeySampler.Distribution.HOTSPOT);
+        final double latest = hotShare(KeySampler.Distribution.LATEST);
+        assertThat(uniform, lessThan(0.02));
+        assertThat(zipfian, greaterThan(0.5));
+        assertThat(hotspot, greaterThan(0.03));
+        assertThat(latest, greaterThan(0.5));
+        // Same seed samples the same keys.
+        final KeySampler first = sampler(KeySampler.Distribution.ZIPFIAN, 7);
+        final KeySampler second = sampler(KeySampler.Distribution.ZIPFIAN, 7);
+        for (int i = 0; i < 1000; i++) {
+            assertThat(second.next(), is(first.next()));
+        }
+    }
+
+    // Share of samples hitting the most popular 1% of keys.
+    private static double hotShare(final KeySampler.Distribution distribution) {
+        final KeySampler sampler = sampler(distribution, 42);
+        final int[] counts = new int[KEYS];
+        final long start = System.nanoTime();
+        for (int i = 0; i < SAMPLES; i++) {
+            counts[sampler.next() - 1]++;
+        }
+        final long elapsed = System.nanoTime() - start;
+        Arrays.sort(counts);
+        long hot = 0;
+        for (int i = KEYS - KEYS / 100; i < KEYS; i++) {
+            hot += counts[i];
+        }
+        final double share = (double) hot / SAMPLES;
+        LOGGER.info(String.format("%-8s %5.1f M samples/s, top 1%% keys receive %5.1f%% of samples",
+                                  distribution, SAMPLES * 1e3 / elapsed, share * 100));
+        return share;
+    }
+
+    private static KeySampler sampler(final KeySampler.Distribution distribution, final long seed) {
+        return KeySampler.create(distribution, 1, KEYS, 0.99, 0.2, 0.8, seed);
+    }
+
+    private static PokemonGenerator generator(final long seed) {
+        return PokemonGenerator.create(Config.builder()
+                .disableEnvironmentVariablesSource()
+                .disableSystemPropertiesSource()
+                .sources(ConfigSources.create(Map.of(
+                        "seed", String.valueOf(seed),
+                        "rows", String.valueOf(ROWS),
+                        "name-cardinality", "10000",
+                        "name-distribution", "zipfian",
+                        "type-distribution", "zipfian",
+                        "name-length.min", "4",
+                        "name-length.max", "24",
+                        "name-length.distribution", "normal")))
+                .build());
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Test frequency estimates of cache keys.
+ */
+public class FrequencySketchTest {
+
+    // Test that accesses are counted
+    @Test
+    void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        assertThat(sketch.frequency(1), is(0));
+        for (int i = 1; i <= 10; i++) {
+            sketch.increment(1);
+            assertThat(sketch.frequency(1), is(i));
+        }
+        sketch.increment(2);
+        assertThat(sketch.frequency(2), is(1));
+        assertThat(sketch.frequency(3), is(0));
+    }
+
+    // Test that counters saturate
+    @Test
+    void testSaturation() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 100; i++) {
+            sketch.increment(1);
+        }
+        assertThat(sketch.frequency(1), is(15));
+    }
+
+    // Test that all counters are halved once sample size of increments was reached
+    @Test
+    void testAging() {
+        int maximumSize = 1024;
+        FrequencySketch sketch = new FrequencySketch(maximumSize);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("popular");
+        }
+        assertThat(sketch.frequency("popular"), is(15));
+        int increments = 15;
+        int key = 0;
+        while (sketch.frequency("popular") == 15) {
+            sketch.increment(key++);
+            increments++;
+            assertThat("Counters were not aged", increments, lessThanOrEqualTo(10 * maximumSize));
+        }
+        assertThat(increments, greaterThanOrEqualTo(10 * maximumSize - 15));
+        assertThat(sketch.frequency("popular"), is(7));
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.logging.Logger;
+
+import io.helidon.common.http.Http;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.tests.integration.tools.client.HelidonProcessRunner;
+import io.helidon.tests.integration.tools.client.TestClient;
+import io.helidon.tests.integration.tools.client.TestServiceClient;
+import io.helidon.webclient.WebClient;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Compare request handler modes and executors at increasing concurrency.
+ * Run this benchmark once for each {@code app.handlers} mode ({@code async}, {@code blocking})
+ * and {@code app.executor.type}, e.g. using environment variables:
+ * <pre>
+ *   APP_HANDLERS=blocking APP_EXECUTOR_TYPE=pool mvn -P benchmark -Dapp.config=cassandra.yaml ... verify
+ * </pre>
+ * Requested row keys follow the distribution configured in {@code app.benchmark.keys}.
+ */
+public class HandlerModeBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(HandlerModeBenchmark.class.getName());
+
+    private static final int[] CONCURRENCY = {1, 4, 16, 64, 256};
+    private static final Duration WARMUP = Duration.ofSeconds(2);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(10);
+
+    private final TestServiceClient testClient = TestClient.builder()
+            .port(HelidonProcessRunner.HTTP_PORT)
+            .service("Cassandra")
+            .build();
+
+    private final TestServiceClient lifeCycleClient = TestClient.builder()
+            .port(HelidonProcessRunner.HTTP_PORT)
+            .service("LifeCycle")
+            .build();
+
+    // Measure select throughput and latency.
+    @Test
+    void benchmarkSelect() {
+        final Config config = Config.create(ConfigSources.classpath(System.getProperty("app.config")));
+        final WebClient webClient = testClient.webClient();
+        run(config, "select", new LoadGenerator(id -> webClient.get()
+                .path("/Cassandra/select")
+                .queryParam("id", String.valueOf(id))
+                .request()
+                .thenCompose(response -> response.content()
+                        .as(String.class)
+                        .thenApply(content -> response.status() == Http.Status.OK_200)),
+                KeySampler.create(config.get("app.benchmark.keys"))));
+    }
+
+    // Measure update throughput and latency, seeded dataset is restored afterwards.
+    @Test
+    void benchmarkUpdate() {
+        final Config config = Config.create(ConfigSources.classpath(System.getProperty("app.config")));
+        final WebClient webClient = testClient.webClient();
+        try {
+            run(config, "update", new LoadGenerator(id -> webClient.get()
+                    .path("/Cassandra/update")
+                    .queryParam("id", String.valueOf(id))
+                    .queryParam("name", "Benchmark")
+                    .request()
+                    .thenCompose(response -> response.content()
+                            .as(String.class)
+                            .thenApply(content -> response.status() == Http.Status.OK_200)),
+                    KeySampler.create(config.get("app.benchmark.keys"))));
+        } finally {
+            lifeCycleClient.callServiceAndGetData("reset");
+        }
+    }
+
+    private static void run(final Config config, final String name, final LoadGenerator generator) {
+        final String mode = config.get("app.handlers").asString().orElse("async");
+        final String executor = config.get("app.executor.type").asString().orElse("event-loop");
+        for (int concurrency : CONCURRENCY) {
+            generator.run(concurrency, WARMUP);
+            final LoadGenerator.Result result = generator.run(concurrency, MEASUREMENT);
+            LOGGER.info(() -> String.format("%s handlers=%s executor=%s %s", name, mode, executor, result));
+            assertThat(result.throughput(), greaterThan(0d));
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import io.helidon.tests.integration.tools.client.HelidonTestException;
+
+/**
+ * Closed loop load generator for benchmarks.
+ * Keeps fixed number of requests in flight: each worker sends next request as soon
+ * as previous one completed. Each request gets row key sampled by worker's own split
+ * of the key sampler, so requests follow configured key popularity.
+ */
+class LoadGenerator {
+
+    private final IntFunction<CompletionStage<Boolean>> request;
+    private final KeySampler keys;
+
+    /**
+     * Creates an instance of load generator.
+     *
+     * @param request asynchronous request of given row key to repeat, completes with {@code true}
+     *                when request was successful
+     * @param keys sampler of row keys
+     */
+    LoadGenerator(final IntFunction<CompletionStage<Boolean>> request, final KeySampler keys) {
+        this.request = request;
+        this.keys = keys;
+    }
+
+    /**
+     * Run requests with given concurrency for given time.
+     *
+     * @param concurrency number of requests in flight
+     * @param duration measurement duration
+     * @return measurement result
+     */
+    Result run(final int concurrency, final Duration duration) {
+        final long end = System.nanoTime() + duration.toNanos();
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        final AtomicLong errors = new AtomicLong();
+        final Worker[] workers = new Worker[concurrency];
+        final long start = System.nanoTime();
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(end, done, errors);
+            workers[i].next();
+        }
+        try {
+            if (!done.await(duration.toMillis() + TimeUnit.MINUTES.toMillis(1), TimeUnit.MILLISECONDS)) {
+                throw new HelidonTestException("Benchmark requests did not complete in time");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new HelidonTestException("Benchmark was interrupted", ie);
+        }
+        final long elapsed = System.nanoTime() - start;
+        int count = 0;
+        for (Worker worker : workers) {
+            count += worker.count;
+        }
+        final long[] latencies = new long[count];
+        int pos = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, pos, worker.count);
+            pos += worker.count;
+        }
+        Arrays.sort(latencies);
+        return new Result(concurrency, elapsed, latencies, errors.get());
+    }
+
+    // Sequence of requests, only one request of the worker is in flight at a time.
+    private final class Worker {
+
+        private final long end;
+        private final CountDownLatch done;
+        private final AtomicLong errors;
+        private final KeySampler sampler;
+        private long[] latencies;
+        private int count;
+
+        private Worker(final long end, final CountDownLatch done, final AtomicLong errors) {
+            this.end = end;
+            this.done = done;
+            this.errors = errors;
+            this.sampler = keys.split();
+            this.latencies = new long[1024];
+            this.count = 0;
+        }
+
+        private void next() {
+            final long start = System.nanoTime();
+            request.apply(sampler.next()).whenComplete((ok, t) -> {
+                final long now = System.nanoTime();
+                if (t != null || !ok) {
+                    errors.incrementAndGet();
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = now - start;
+                if (now < end) {
+                    next();
+                } else {
+                    done.countDown();
+                }
+            });
+        }
+
+    }
+
+    /**
+     * Benchmark measurement result.
+     */
+    static final class Result {
+
+        private final int concurrency;
+        private final long elapsed;
+        private final long[] latencies;
+        private final long errors;
+
+        private Result(final int concurrency, final long elapsed, final long[] latencies, final long errors) {
+            this.concurrency = concurrency;
+            this.elapsed = elapsed;
+            this.latencies = latencies;
+            this.errors = errors;
+        }
+
+        /**
+         * Completed requests per second.
+         *
+         * @return throughput
+         */
+        double throughput() {
+            return latencies.length * 1e9 / elapsed;
+        }
+
+        /**
+         * Latency percentile in milliseconds.
+         *
+         * @param percentile percentile from {@code 0} to {@code 100}
+         * @return request latency
+         */
+        double percentile(final double percentile) {
+            if (latencies.length == 0) {
+                return 0d;
+            }
+            final int index = (int) Math.min(latencies.length - 1, Math.ceil(percentile / 100 * latencies.length) - 1);
+            return latencies[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "concurrency=%4d requests=%7d errors=%5d throughput=%9.1f/s p50=%8.2fms p99=%8.2fms p999=%8.2fms",
+                    concurrency, latencies.length, errors, throughput(), percentile(50), percentile(99), percentile(99.9));
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.Map;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+
+import org.eclipse.microprofile.metrics.MetricFilter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+/**
+ * Test near cache admission, eviction and invalidation.
+ */
+public class NearCacheTest {
+
+    // Estimated entry overhead added to value weight by the cache
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final byte[] VALUE = new byte[4];
+
+    // Cache registers its metrics in the application registry.
+    @BeforeEach
+    void clearMetrics() {
+        RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION).removeMatching(MetricFilter.ALL);
+    }
+
+    // Test that a scan of one-hit wonders does not flush frequently read entries
+    @Test
+    void testFrequentEntriesStay() {
+        NearCache<Integer, byte[]> cache = cache(100, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            read(cache, i);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 100; i++) {
+                assertThat(cache.get(i), notNullValue());
+            }
+        }
+        for (int i = 1000; i < 1300; i++) {
+            read(cache, i);
+        }
+        assertThat(cache.size(), lessThanOrEqualTo(100));
+        // Sketch may overestimate some one-hit wonders, LRU would keep none of the frequent entries
+        int cached = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.get(i) != null) {
+                cached++;
+            }
+        }
+        assertThat(cached, greaterThanOrEqualTo(80));
+    }
+
+    // Test that entry leaving the window is admitted when it is read more often than the main space victim
+    @Test
+    void testAdmission() {
+        NearCache<Integer, byte[]> cache = cache(100, Long.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            read(cache, i);
+        }
+        // Key read repeatedly while it was not cached
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.get(500), nullValue());
+        }
+        read(cache, 500);
+        // Next entry pushes the key out of the window
+        read(cache, 501);
+        assertThat(cache.get(500), notNullValue());
+        assertThat(cache.size(), lessThanOrEqualTo(100));
+    }
+
+    // Test that cache is bounded by size of values in bytes
+    @Test
+    void testEvictionBySize() {
+        int weight = 100 + ENTRY_OVERHEAD;
+        NearCache<Integer, byte[]> cache = cache(1000, 5L * weight);
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, new byte[100], cache.stamp());
+            assertThat(cache.bytes(), lessThanOrEqualTo(5L * weight));
+        }
+        assertThat(cache.size(), is(5));
+        assertThat(cache.bytes(), is(5L * weight));
+        // Replaced value changes the size of its entry
+        cache.put(19, new byte[10], cache.stamp());
+        assertThat(cache.bytes(), is(4L * weight + 10 + ENTRY_OVERHEAD));
+        cache.invalidateAll();
+        assertThat(cache.size(), is(0));
+        assertThat(cache.bytes(), is(0L));
+    }
+
+    // Test that value read before concurrent invalidation is not stored
+    @Test
+    void testInvalidationDuringRead() {
+        NearCache<Integer, byte[]> cache = cache(100, Long.MAX_VALUE);
+        long stamp = cache.stamp();
+        // Row was modified while it was being read
+        cache.invalidate(1);
+        cache.put(1, VALUE, stamp);
+        assertThat(cache.get(1), nullValue());
+        // Any invalidation during the read discards the value
+        stamp = cache.stamp();
+        cache.invalidateAll();
+        cache.put(1, VALUE, stamp);
+        assertThat(cache.get(1), nullValue());
+        // Value read after invalidation is stored
+        read(cache, 1);
+        assertThat(cache.get(1), equalTo(VALUE));
+        cache.invalidate(1);
+        assertThat(cache.get(1), nullValue());
+        assertThat(cache.bytes(), is(0L));
+    }
+
+    // Test that disabled cache never returns stored value
+    @Test
+    void testDisabled() {
+        NearCache<Integer, byte[]> cache = NearCache.create(
+                Config.create(ConfigSources.create(Map.of("enabled", "false"))),
+                value -> value.length);
+        cache.put(1, VALUE, cache.stamp());
+        assertThat(cache.get(1), nullValue());
+        assertThat(cache.size(), is(0));
+    }
+
+    // Read through the cache as service does: get, then put of the value read from database.
+    private static void read(NearCache<Integer, byte[]> cache, int key) {
+        if (cache.get(key) == null) {
+            cache.put(key, VALUE, cache.stamp());
+        }
+    }
+
+    private static NearCache<Integer, byte[]> cache(int maxEntries, long maxBytes) {
+        return NearCache.create(
+                Config.create(ConfigSources.create(Map.of(
+                        "enabled", "true",
+                        "max-entries", String.valueOf(maxEntries),
+                        "max-bytes", String.valueOf(maxBytes)))),
+                value -> value.length);
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.detach.AttachmentPoint;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.internal.core.cql.DefaultRow;
+import org.eclipse.microprofile.metrics.MetricFilter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test sharing of identical reads in flight.
+ */
+public class ReadCoalescerTest {
+
+    private static final String SELECT = "SELECT * FROM test.pokemon WHERE id = ?";
+
+    private RecordingSession session;
+    private StatementRegistry.Handle select;
+    private ReadCoalescer coalescer;
+
+    // Coalescer and registry register their metrics in the application registry.
+    @BeforeEach
+    void setUp() {
+        RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION).removeMatching(MetricFilter.ALL);
+        session = new RecordingSession();
+        select = session.registry(Map.of("select", SELECT)).handle("select");
+        coalescer = ReadCoalescer.create(Config.create(ConfigSources.create(Map.of("enabled", "true"))));
+    }
+
+    // Test that concurrent identical reads share one database call and reads of other keys do not
+    @Test
+    void testConcurrentReadsShareExecution() throws Exception {
+        int readers = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        List<Future<CompletableFuture<Row>>> reads = new ArrayList<>(readers);
+        try {
+            for (int i = 0; i < readers; i++) {
+                reads.add(executor.submit(() -> {
+                    start.await();
+                    return coalescer.one(select, 1).toCompletableFuture();
+                }));
+            }
+            start.countDown();
+            List<CompletableFuture<Row>> rows = new ArrayList<>(readers);
+            for (Future<CompletableFuture<Row>> read : reads) {
+                rows.add(read.get(10, TimeUnit.SECONDS));
+            }
+            CompletableFuture<Row> other = coalescer.one(select, 2).toCompletableFuture();
+            List<RecordingSession.Execution> executions = session.executions();
+            assertThat(executions.size(), is(2));
+            assertThat(executions.get(0).values(), is(List.of(1)));
+            assertThat(executions.get(1).values(), is(List.of(2)));
+            Row row = row();
+            executions.get(0).complete(row);
+            for (CompletableFuture<Row> result : rows) {
+                assertThat(result.get(10, TimeUnit.SECONDS), sameInstance(row));
+            }
+            assertThat(other.isDone(), is(false));
+            executions.get(1).complete(null);
+            assertThat(other.get(10, TimeUnit.SECONDS), is((Row) null));
+            // Completed read is not shared with later readers
+            coalescer.one(select, 1);
+            assertThat(session.executions().size(), is(3));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    // Test that failed read is reported to readers which joined it and is not shared with later readers
+    @Test
+    void testFailedReadNotShared() throws Exception {
+        CompletableFuture<Row> first = coalescer.one(select, 1).toCompletableFuture();
+        CompletableFuture<Row> joined = coalescer.one(select, 1).toCompletableFuture();
+        assertThat(session.executions().size(), is(1));
+        session.executions().get(0).fail(new IllegalStateException("Read failed"));
+        assertThat(first.isCompletedExceptionally(), is(true));
+        assertThat(joined.isCompletedExceptionally(), is(true));
+        ExecutionException ex = assertThrows(ExecutionException.class, joined::get);
+        assertThat(ex.getCause().getMessage(), is("Read failed"));
+        CompletableFuture<Row> later = coalescer.one(select, 1).toCompletableFuture();
+        assertThat(session.executions().size(), is(2));
+        Row row = row();
+        session.executions().get(1).complete(row);
+        assertThat(later.get(10, TimeUnit.SECONDS), sameInstance(row));
+    }
+
+    // Test that readers started after invalidation do not join read which started before the write
+    @Test
+    void testInvalidate() throws Exception {
+        CompletableFuture<Row> before = coalescer.one(select, 1).toCompletableFuture();
+        coalescer.invalidate(select, 1);
+        CompletableFuture<Row> after = coalescer.one(select, 1).toCompletableFuture();
+        List<RecordingSession.Execution> executions = session.executions();
+        assertThat(executions.size(), is(2));
+        Row stale = row();
+        Row current = row();
+        executions.get(0).complete(stale);
+        // Stale read completing late must not remove the current read
+        assertThat(coalescer.one(select, 1).toCompletableFuture(), sameInstance(after));
+        executions.get(1).complete(current);
+        assertThat(before.get(10, TimeUnit.SECONDS), sameInstance(stale));
+        assertThat(after.get(10, TimeUnit.SECONDS), sameInstance(current));
+    }
+
+    private static Row row() {
+        return new DefaultRow(DefaultColumnDefinitions.valueOf(List.of()), List.of(), AttachmentPoint.NONE);
+    }
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.ExecutionInfo;
+import com.datastax.oss.driver.api.core.cql.PreparedStatement;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+
+/**
+ * Database session which records statement executions and lets the test complete them.
+ * Executions are recorded on the calling thread in the order they were started.
+ */
+final class RecordingSession {
+
+    private final List<Execution> executions;
+    private final CqlSession session;
+
+    RecordingSession() {
+        this.executions = new ArrayList<>();
+        this.session = proxy(CqlSession.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareAsync":
+                    return CompletableFuture.completedFuture(prepared(((SimpleStatement) args[0]).getQuery()));
+                case "executeAsync":
+                    final Bound bound = (Bound) Proxy.getInvocationHandler(args[0]);
+                    final Execution execution = new Execution(bound.query, bound.values);
+                    synchronized (executions) {
+                        executions.add(execution);
+                    }
+                    return execution.result;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    /**
+     * Statements registry attached to this session.
+     *
+     * @param statements statement names and their CQL
+     * @return statements registry
+     */
+    StatementRegistry registry(final Map<String, String> statements) {
+        final Map<String, StatementOptions> options = new HashMap<>(statements.size());
+        statements.forEach((name, cql) -> options.put(
+                name, StatementOptions.create(Config.create(ConfigSources.create(Map.of("cql", cql))).get("cql"))));
+        final StatementRegistry registry = new StatementRegistry(
+                options, SlowQueryLog.create(Config.create(ConfigSources.create(Map.of("enabled", "false")))));
+        registry.attach(session);
+        return registry;
+    }
+
+    /**
+     * Executions started so far.
+     *
+     * @return copy of recorded executions
+     */
+    List<Execution> executions() {
+        synchronized (executions) {
+            return new ArrayList<>(executions);
+        }
+    }
+
+    private static PreparedStatement prepared(final String query) {
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "bind":
+                    return proxy(BoundStatement.class, new Bound(query, Arrays.asList((Object[]) args[0])));
+                case "getQuery":
+                    return query;
+                case "getResultSetDefinitions":
+                    return DefaultColumnDefinitions.valueOf(List.of());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * Single statement execution.
+     */
+    static final class Execution {
+
+        private final String query;
+        private final List<Object> values;
+        private final CompletableFuture<AsyncResultSet> result;
+
+        private Execution(final String query, final List<Object> values) {
+            this.query = query;
+            this.values = values;
+            this.result = new CompletableFuture<>();
+        }
+
+        /**
+         * Executed CQL.
+         *
+         * @return query of prepared statement
+         */
+        String query() {
+            return query;
+        }
+
+        /**
+         * Values bound to the statement.
+         *
+         * @return bound values
+         */
+        List<Object> values() {
+            return values;
+        }
+
+        /**
+         * Complete execution with result containing provided row.
+         *
+         * @param row first row of the result, may be {@code null}
+         */
+        void complete(final Row row) {
+            final ExecutionInfo info = proxy(ExecutionInfo.class, (proxy, method, args) -> {
+                if (method.getName().equals("getSpeculativeExecutionCount")) {
+                    return 0;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+            result.complete(proxy(AsyncResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "one":
+                        return row;
+                    case "getExecutionInfo":
+                        return info;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }));
+        }
+
+        /**
+         * Fail the execution.
+         *
+         * @param t execution failure
+         */
+        void fail(final Throwable t) {
+            result.completeExceptionally(t);
+        }
+
+    }
+
+    // Statement bound from prepared statement proxy.
+    private static final class Bound implements InvocationHandler {
+
+        private final String query;
+        private final List<Object> values;
+
+        private Bound(final String query, final List<Object> values) {
+            this.query = query;
+            this.values = values;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.detach.AttachmentPoint;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinition;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.internal.core.cql.DefaultRow;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import org.junit.jupiter.api.Test;
+
+import static io.helidon.tests.integration.tools.service.AppResponse.okStatus;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Compare response encoding of pokemon table row by JSON-P object builder and by {@link RowEncoder}.
+ * Rows are built in memory, so this benchmark measures encoding only: time and heap allocated
+ * per encoded response.
+ */
+public class RowEncoderBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(RowEncoderBenchmark.class.getName());
+
+    private static final int WARMUP = 20_000;
+    private static final int MEASUREMENT = 100_000;
+    private static final byte[] OK_PREFIX = "{\"status\":\"OK\",\"data\":".getBytes(StandardCharsets.US_ASCII);
+
+    // Measure encoding of pokemon row into okStatus response content.
+    @Test
+    void benchmarkEncode() {
+        final ColumnDefinitions definitions = DefaultColumnDefinitions.valueOf(List.of(
+                column("id", 0, ProtocolConstants.DataType.INT),
+                column("name", 1, ProtocolConstants.DataType.VARCHAR),
+                column("type", 2, ProtocolConstants.DataType.VARCHAR)));
+        final Row[] rows = {
+                row(definitions, 1, "Bulbasaur", "Grass"),
+                row(definitions, 122, "Mr. \"Mime\"\t", "Psychic"),
+                row(definitions, 669, "Flabébé", "Fairy")
+        };
+        final RowEncoder encoder = RowEncoder.compile(definitions);
+        final Function<Row, byte[]> jsonp = row -> okStatus(pokemon(row)).toString().getBytes(StandardCharsets.UTF_8);
+        final Function<Row, byte[]> compiled = row -> envelope(encoder.encode(row));
+        for (Row row : rows) {
+            assertThat(new String(compiled.apply(row), StandardCharsets.UTF_8),
+                       is(new String(jsonp.apply(row), StandardCharsets.UTF_8)));
+        }
+        final Result jsonpResult = measure("json-p", jsonp, rows);
+        final Result encoderResult = measure("encoder", compiled, rows);
+        LOGGER.info(jsonpResult::toString);
+        LOGGER.info(encoderResult::toString);
+        assertThat(encoderResult.bytesPerOp, lessThan(jsonpResult.bytesPerOp));
+    }
+
+    private static Result measure(final String name, final Function<Row, byte[]> encoder, final Row[] rows) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += encoder.apply(rows[i % rows.length]).length;
+        }
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long allocated = threads.getThreadAllocatedBytes(threadId);
+        final long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT; i++) {
+            sink += encoder.apply(rows[i % rows.length]).length;
+        }
+        final long time = System.nanoTime() - start;
+        final long bytes = threads.getThreadAllocatedBytes(threadId) - allocated;
+        return new Result(name, (double) time / MEASUREMENT, (double) bytes / MEASUREMENT, sink);
+    }
+
+    // Response content as sent by AppResponseWriter.
+    private static byte[] envelope(final byte[] data) {
+        final byte[] content = new byte[OK_PREFIX.length + data.length + 1];
+        System.arraycopy(OK_PREFIX, 0, content, 0, OK_PREFIX.length);
+        System.arraycopy(data, 0, content, OK_PREFIX.length, data.length);
+        content[content.length - 1] = '}';
+        return content;
+    }
+
+    // Row to JSON conversion used before row encoders.
+    private static JsonValue pokemon(final Row row) {
+        JsonObjectBuilder job = Json.createObjectBuilder();
+        job.add("id", row.getInt("id"));
+        job.add("name", row.getString("name"));
+        job.add("type", row.getString("type"));
+        return job.build();
+    }
+
+    private static DefaultColumnDefinition column(final String name, final int index, final int type) {
+        return new DefaultColumnDefinition(
+                new ColumnSpec("pokemon", "pokemon", name, index, RawType.PRIMITIVES.get(type)),
+                AttachmentPoint.NONE);
+    }
+
+    private static Row row(final ColumnDefinitions definitions, final int id, final String name, final String type) {
+        return new DefaultRow(
+                definitions,
+                List.of(ByteBuffer.allocate(4).putInt(0, id),
+                        ByteBuffer.wrap(name.getBytes(StandardCharsets.UTF_8)),
+                        ByteBuffer.wrap(type.getBytes(StandardCharsets.UTF_8))),
+                AttachmentPoint.NONE);
+    }
+
+    private static final class Result {
+
+        private final String name;
+        private final double nanosPerOp;
+        private final double bytesPerOp;
+        private final long sink;
+
+        private Result(final String name, final double nanosPerOp, final double bytesPerOp, final long sink) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+            this.sink = sink;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f ns/op, %.1f B/op (%d bytes written)", name, nanosPerOp, bytesPerOp, sink);
+        }
+
+    }
+
+}
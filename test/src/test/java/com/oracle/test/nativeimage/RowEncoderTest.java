@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonObjectBuilder;
+
+import com.datastax.oss.driver.api.core.ProtocolVersion;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinition;
+import com.datastax.oss.driver.api.core.cql.ColumnDefinitions;
+import com.datastax.oss.driver.api.core.cql.Row;
+import com.datastax.oss.driver.api.core.detach.AttachmentPoint;
+import com.datastax.oss.driver.api.core.type.codec.TypeCodecs;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinition;
+import com.datastax.oss.driver.internal.core.cql.DefaultColumnDefinitions;
+import com.datastax.oss.driver.internal.core.cql.DefaultRow;
+import com.datastax.oss.protocol.internal.ProtocolConstants;
+import com.datastax.oss.protocol.internal.response.result.ColumnSpec;
+import com.datastax.oss.protocol.internal.response.result.RawType;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Test that {@link RowEncoder} and {@link JsonOutput} write the same bytes as JSON-P.
+ */
+public class RowEncoderTest {
+
+    private static final ProtocolVersion VERSION = ProtocolVersion.DEFAULT;
+
+    // Strings with characters JSON-P escapes and characters it writes as they are
+    private static final List<String> STRINGS = List.of(
+            "",
+            "Bulbasaur",
+            "Mr. \"Mime\" \\ /",
+            "control \b\f\n\r\t\u0000\u0001\u001b\u001f\u007f",
+            "Flabébé ポケモン",
+            "non-BMP 🐉 😀");
+
+    // Test text columns with characters which must be escaped and multi-byte characters
+    @Test
+    void testText() {
+        ColumnDefinitions definitions = definitions(ProtocolConstants.DataType.INT, ProtocolConstants.DataType.VARCHAR);
+        RowEncoder encoder = RowEncoder.compile(definitions);
+        for (String value : STRINGS) {
+            verify(encoder, row(definitions, TypeCodecs.INT.encode(1, VERSION), TypeCodecs.TEXT.encode(value, VERSION)),
+                   Json.createObjectBuilder().add("c0", 1).add("c1", value));
+        }
+    }
+
+    // Test NULL values of every column type
+    @Test
+    void testNull() {
+        ColumnDefinitions definitions = definitions(ProtocolConstants.DataType.INT,
+                                                    ProtocolConstants.DataType.VARCHAR,
+                                                    ProtocolConstants.DataType.BIGINT,
+                                                    ProtocolConstants.DataType.BOOLEAN,
+                                                    ProtocolConstants.DataType.DOUBLE,
+                                                    ProtocolConstants.DataType.UUID);
+        JsonObjectBuilder expected = Json.createObjectBuilder();
+        for (int i = 0; i < definitions.size(); i++) {
+            expected.addNull("c" + i);
+        }
+        verify(RowEncoder.compile(definitions), row(definitions, new ByteBuffer[definitions.size()]), expected);
+    }
+
+    // Test numeric and boolean columns
+    @Test
+    void testNumbers() {
+        ColumnDefinitions definitions = definitions(ProtocolConstants.DataType.INT,
+                                                    ProtocolConstants.DataType.BIGINT,
+                                                    ProtocolConstants.DataType.SMALLINT,
+                                                    ProtocolConstants.DataType.TINYINT,
+                                                    ProtocolConstants.DataType.BOOLEAN,
+                                                    ProtocolConstants.DataType.DOUBLE,
+                                                    ProtocolConstants.DataType.DECIMAL,
+                                                    ProtocolConstants.DataType.VARINT);
+        RowEncoder encoder = RowEncoder.compile(definitions);
+        List<Object[]> values = List.of(
+                new Object[] {0, 0L, (short) 0, (byte) 0, false, 0d, BigDecimal.ZERO, BigInteger.ZERO},
+                new Object[] {Integer.MIN_VALUE, Long.MIN_VALUE, Short.MIN_VALUE, Byte.MIN_VALUE, true, -0.5d,
+                        new BigDecimal("-1.50"), new BigInteger("-123456789012345678901234567890")},
+                new Object[] {Integer.MAX_VALUE, Long.MAX_VALUE, Short.MAX_VALUE, Byte.MAX_VALUE, true, 1e10d,
+                        new BigDecimal("1E+3"), BigInteger.TEN},
+                new Object[] {-1, 1000000000000L, (short) -1, (byte) -1, false, 1.0E-7d,
+                        new BigDecimal("0.000001"), BigInteger.ONE.negate()});
+        for (Object[] v : values) {
+            Row row = row(definitions,
+                          TypeCodecs.INT.encode((Integer) v[0], VERSION),
+                          TypeCodecs.BIGINT.encode((Long) v[1], VERSION),
+                          TypeCodecs.SMALLINT.encode((Short) v[2], VERSION),
+                          TypeCodecs.TINYINT.encode((Byte) v[3], VERSION),
+                          TypeCodecs.BOOLEAN.encode((Boolean) v[4], VERSION),
+                          TypeCodecs.DOUBLE.encode((Double) v[5], VERSION),
+                          TypeCodecs.DECIMAL.encode((BigDecimal) v[6], VERSION),
+                          TypeCodecs.VARINT.encode((BigInteger) v[7], VERSION));
+            verify(encoder, row, Json.createObjectBuilder()
+                    .add("c0", (Integer) v[0])
+                    .add("c1", (Long) v[1])
+                    .add("c2", (Short) v[2])
+                    .add("c3", (Byte) v[3])
+                    .add("c4", (Boolean) v[4])
+                    .add("c5", (Double) v[5])
+                    .add("c6", (BigDecimal) v[6])
+                    .add("c7", (BigInteger) v[7]));
+        }
+    }
+
+    // Test JSON output of strings and numbers written directly
+    @Test
+    void testJsonOutput() {
+        JsonOutput out = new JsonOutput(16);
+        for (String value : STRINGS) {
+            out.reset();
+            assertThat(string(out.writeString(value)), is(Json.createValue(value).toString()));
+        }
+        for (long value : new long[] {0, 1, -1, 9, 10, 99, 100, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE / 10}) {
+            out.reset();
+            assertThat(string(out.writeLong(value)), is(Json.createValue(value).toString()));
+        }
+        for (int value : new int[] {Integer.MAX_VALUE, Integer.MIN_VALUE, -100}) {
+            out.reset();
+            assertThat(string(out.writeInt(value)), is(Json.createValue(value).toString()));
+        }
+    }
+
+    private static void verify(RowEncoder encoder, Row row, JsonObjectBuilder expected) {
+        byte[] encoded = encoder.encode(row);
+        byte[] jsonp = expected.build().toString().getBytes(StandardCharsets.UTF_8);
+        assertThat(new String(encoded, StandardCharsets.UTF_8), is(new String(jsonp, StandardCharsets.UTF_8)));
+        assertThat(encoded, equalTo(jsonp));
+    }
+
+    private static String string(JsonOutput out) {
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    // Columns c0, c1, ... of provided protocol types.
+    private static ColumnDefinitions definitions(int... types) {
+        List<ColumnDefinition> columns = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            columns.add(new DefaultColumnDefinition(
+                    new ColumnSpec("test", "test", "c" + i, i, RawType.PRIMITIVES.get(types[i])),
+                    AttachmentPoint.NONE));
+        }
+        return DefaultColumnDefinitions.valueOf(columns);
+    }
+
+    private static Row row(ColumnDefinitions definitions, ByteBuffer... values) {
+        return new DefaultRow(definitions, Arrays.asList(values), AttachmentPoint.NONE);
+    }
+
+}
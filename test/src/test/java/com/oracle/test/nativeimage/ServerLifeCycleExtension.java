@@ -136,10 +136,7 @@ public class ServerLifeCycleExtension extends TestsLifeCycleExtension {
         long endTm = 1000 * TIMEOUT + System.currentTimeMillis();
         while (true) {
             try {
-                final CqlSession session = CqlSession.builder()
-                        .addContactPoint(new InetSocketAddress(host, port))
-                        .withLocalDatacenter("single")
-                        .build();
+                final CqlSession session = openSession();
                 LOGGER.info(() -> String.format("Database is running at %s:%d", host, port));
                 session.close();
                 return;
@@ -157,6 +154,21 @@ public class ServerLifeCycleExtension extends TestsLifeCycleExtension {
         }
     }
 
+    /**
+     * Open database session of the test itself, e.g. to change schema behind the application.
+     *
+     * @return database session, caller must close it
+     */
+    public static CqlSession openSession() {
+        final Config config = Config.create(ConfigSources.classpath(System.getProperty("app.config")));
+        final String host = config.get("db.connection.host").as(String.class).get();
+        final int port = config.get("db.connection.port").as(Integer.class).get();
+        return CqlSession.builder()
+                .addContactPoint(new InetSocketAddress(host, port))
+                .withLocalDatacenter("single")
+                .build();
+    }
+
     // Close database connection.
     private static void closeConnection(final Connection connection) {
         try {
@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+import com.datastax.oss.driver.api.core.config.DefaultDriverOption;
+import com.datastax.oss.driver.api.core.config.DriverConfig;
+import com.datastax.oss.driver.api.core.config.DriverConfigLoader;
+import com.datastax.oss.driver.api.core.config.DriverExecutionProfile;
+import com.datastax.oss.driver.api.core.context.DriverContext;
+import com.datastax.oss.driver.api.core.tracker.RequestTracker;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Drive {@link PercentileSpeculativeExecutionPolicy} by latencies recorded through its request tracker.
+ * <p>Policy is created from programmatic driver configuration, no session is connected. Delay must
+ * follow configured fallback until enough latencies were recorded, then configured percentile of recorded
+ * latencies bounded by minimal delay.
+ * <p>Test cluster has single node, so speculative execution would always target the same node. Replicas
+ * are simulated in memory to compare tail latency without speculative executions, with constant delay
+ * and with delay returned by the policy: one of the replicas stalls a few percent of its executions,
+ * next execution starts on next replica when the policy returns non negative delay, first response wins
+ * and its latency is passed to the tracker. Tail latency depends on machine load, it's logged only.
+ */
+public class SpeculativeExecutionBenchmark {
+
+    private static final Logger LOGGER = Logger.getLogger(SpeculativeExecutionBenchmark.class.getName());
+
+    private static final String PROFILE = "hedged";
+    private static final long FALLBACK_MILLIS = 50;
+    private static final double PERCENTILE = 95.0;
+    // Policy refreshes percentile once per second
+    private static final long REFRESH_MILLIS = 1100;
+    private static final int CALLS = 10_000_000;
+    private static final int REPLICAS = 3;
+    private static final int CONCURRENCY = 16;
+    private static final long BASE_MICROS = 1000;
+    private static final long JITTER_MICROS = 500;
+    // Slow replica stalls some of its executions
+    private static final int SLOW_REPLICA = 0;
+    private static final double STALL_PROBABILITY = 0.06;
+    private static final long STALL_MICROS = 50_000;
+    private static final Duration WARMUP = Duration.ofSeconds(2);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(5);
+
+    // Delay follows fallback, then recorded latency percentile bounded by minimal delay.
+    @Test
+    void benchmarkPolicyDelay() throws InterruptedException {
+        final DriverConfig config = config();
+        final DriverExecutionProfile profile = config.getProfile(PROFILE);
+        final RequestTracker tracker = PercentileSpeculativeExecutionPolicy.tracker();
+        final PercentileSpeculativeExecutionPolicy policy = new PercentileSpeculativeExecutionPolicy(context(config), PROFILE);
+        try {
+            assertThat(policy.nextExecution(null, null, null, 1), is(FALLBACK_MILLIS));
+            assertThat(policy.nextExecution(null, null, null, 2), is(-1L));
+            // Uniform latencies 0.1 .. 10 ms, expected delay is computed with the same histogram precision.
+            final Histogram expected = new Histogram(2);
+            for (int i = 0; i < 10_000; i++) {
+                final long micros = (i % 100 + 1) * 100;
+                expected.recordValue(micros);
+                tracker.onNodeSuccess(null, TimeUnit.MICROSECONDS.toNanos(micros), profile, null, PROFILE);
+            }
+            Thread.sleep(REFRESH_MILLIS);
+            final long percentile = (expected.getValueAtPercentile(PERCENTILE) + 999) / 1000;
+            assertThat(policy.nextExecution(null, null, null, 1), is(percentile));
+            // Latencies below minimal delay.
+            for (int i = 0; i < 1000; i++) {
+                tracker.onNodeSuccess(null, TimeUnit.MICROSECONDS.toNanos(100), profile, null, PROFILE);
+            }
+            Thread.sleep(REFRESH_MILLIS);
+            assertThat(policy.nextExecution(null, null, null, 1), is(1L));
+            // Cost of the calls made by the driver for every execution.
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                tracker.onNodeSuccess(null, BASE_MICROS * 1000 + i % 1000, profile, null, PROFILE);
+            }
+            final long recordNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            long sum = 0;
+            for (int i = 0; i < CALLS; i++) {
+                sum += policy.nextExecution(null, null, null, 1);
+            }
+            final long nextNanos = System.nanoTime() - start;
+            final long checksum = sum;
+            LOGGER.info(() -> String.format("Tracker record %.1f ns, policy next execution %.1f ns (checksum %d)",
+                                            (double) recordNanos / CALLS, (double) nextNanos / CALLS, checksum));
+        } finally {
+            policy.close();
+        }
+    }
+
+    // Compare end to end read latency of hedging strategies.
+    @Test
+    void benchmarkHedging() throws InterruptedException {
+        final DriverConfig config = config();
+        final DriverExecutionProfile profile = config.getProfile(PROFILE);
+        final RequestTracker tracker = PercentileSpeculativeExecutionPolicy.tracker();
+        final PercentileSpeculativeExecutionPolicy policy = new PercentileSpeculativeExecutionPolicy(context(config), PROFILE);
+        final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        try {
+            final Result none = run(scheduler, "none", running -> -1L, latency -> { });
+            final Result constant = run(scheduler, "constant 10 ms", running -> running < 2 ? 10L : -1L, latency -> { });
+            final Result adaptive = run(scheduler,
+                                        String.format("percentile %.0f", PERCENTILE),
+                                        running -> policy.nextExecution(null, null, null, running),
+                                        latency -> tracker.onNodeSuccess(null, latency, profile, null, PROFILE));
+            LOGGER.info(none::toString);
+            LOGGER.info(constant::toString);
+            LOGGER.info(adaptive::toString);
+        } finally {
+            scheduler.shutdownNow();
+            policy.close();
+        }
+    }
+
+    // Policy configuration of the profile, speculative execution is started at most once.
+    private static DriverConfig config() {
+        return DriverConfigLoader.programmaticBuilder()
+                .startProfile(PROFILE)
+                .withClass(DefaultDriverOption.SPECULATIVE_EXECUTION_POLICY_CLASS, PercentileSpeculativeExecutionPolicy.class)
+                .withInt(DefaultDriverOption.SPECULATIVE_EXECUTION_MAX, 2)
+                .withDuration(DefaultDriverOption.SPECULATIVE_EXECUTION_DELAY, Duration.ofMillis(FALLBACK_MILLIS))
+                .withDouble(PercentileSpeculativeExecutionPolicy.Option.PERCENTILE, PERCENTILE)
+                .withDuration(PercentileSpeculativeExecutionPolicy.Option.MIN_DELAY, Duration.ofMillis(1))
+                .endProfile()
+                .build()
+                .getInitialConfig();
+    }
+
+    // Policy reads its configuration only, no session is needed.
+    private static DriverContext context(final DriverConfig config) {
+        return (DriverContext) Proxy.newProxyInstance(
+                DriverContext.class.getClassLoader(),
+                new Class<?>[] {DriverContext.class},
+                (proxy, method, args) -> {
+                    if ("getConfig".equals(method.getName())) {
+                        return config;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Result run(final ScheduledExecutorService scheduler,
+                              final String name,
+                              final IntToLongFunction delay,
+                              final LongConsumer tracker) throws InterruptedException {
+        final Hedging hedging = new Hedging(scheduler, delay, tracker);
+        final long start = System.nanoTime();
+        final long measured = start + WARMUP.toNanos();
+        final long end = measured + MEASUREMENT.toNanos();
+        final List<Thread> workers = new ArrayList<>(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            final Thread worker = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    final boolean measure = System.nanoTime() >= measured;
+                    hedging.read(measure).join();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return new Result(name, hedging);
+    }
+
+    // Single replica execution latency.
+    private static long latencyMicros(final int replica) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (replica == SLOW_REPLICA && random.nextDouble() < STALL_PROBABILITY) {
+            return STALL_MICROS;
+        }
+        return BASE_MICROS + (long) (-JITTER_MICROS * Math.log(1.0 - random.nextDouble()));
+    }
+
+    // Reads from simulated replicas with speculative executions.
+    private static final class Hedging {
+
+        private final ScheduledExecutorService scheduler;
+        // Delay of next execution in milliseconds by number of running executions, negative for none
+        private final IntToLongFunction delay;
+        private final LongConsumer tracker;
+        private final Histogram histogram;
+        private final LongAdder requests;
+        private final LongAdder fired;
+        private final LongAdder won;
+
+        private Hedging(final ScheduledExecutorService scheduler, final IntToLongFunction delay, final LongConsumer tracker) {
+            this.scheduler = scheduler;
+            this.delay = delay;
+            this.tracker = tracker;
+            this.histogram = new ConcurrentHistogram(3);
+            this.requests = new LongAdder();
+            this.fired = new LongAdder();
+            this.won = new LongAdder();
+        }
+
+        // Read completes with time of the first response.
+        private CompletableFuture<Long> read(final boolean measure) {
+            final CompletableFuture<Long> result = new CompletableFuture<>();
+            final int replica = ThreadLocalRandom.current().nextInt(REPLICAS);
+            final long start = System.nanoTime();
+            execute(result, replica, 0, measure);
+            if (measure) {
+                requests.increment();
+                return result.whenComplete(
+                        (completed, t) -> histogram.recordValue(TimeUnit.NANOSECONDS.toMicros(completed - start)));
+            }
+            return result;
+        }
+
+        private void execute(final CompletableFuture<Long> result, final int replica, final int execution, final boolean measure) {
+            final long start = System.nanoTime();
+            scheduler.schedule(() -> {
+                final long completed = System.nanoTime();
+                if (result.complete(completed)) {
+                    tracker.accept(completed - start);
+                    if (execution > 0 && measure) {
+                        won.increment();
+                    }
+                }
+            }, latencyMicros((replica + execution) % REPLICAS), TimeUnit.MICROSECONDS);
+            final long next = delay.applyAsLong(execution + 1);
+            if (next >= 0) {
+                scheduler.schedule(() -> {
+                    if (!result.isDone()) {
+                        if (measure) {
+                            fired.increment();
+                        }
+                        execute(result, replica, execution + 1, measure);
+                    }
+                }, next, TimeUnit.MILLISECONDS);
+            }
+        }
+
+    }
+
+    private static final class Result {
+
+        private final String name;
+        private final long requests;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+        private final long fired;
+        private final long won;
+
+        private Result(final String name, final Hedging hedging) {
+            this.name = name;
+            this.requests = hedging.requests.sum();
+            this.p50 = hedging.histogram.getValueAtPercentile(50.0);
+            this.p99 = hedging.histogram.getValueAtPercentile(99.0);
+            this.p999 = hedging.histogram.getValueAtPercentile(99.9);
+            this.max = hedging.histogram.getMaxValue();
+            this.fired = hedging.fired.sum();
+            this.won = hedging.won.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %8d requests, p50 %6d us, p99 %6d us, p999 %6d us, max %6d us, "
+                                         + "speculative executions fired %5.2f %%, won %5.2f %%",
+                                 name, requests, p50, p99, p999, max,
+                                 100.0 * fired / requests, fired == 0 ? 0.0 : 100.0 * won / fired);
+        }
+
+    }
+
+}
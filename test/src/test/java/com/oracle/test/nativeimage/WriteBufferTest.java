@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2021 Oracle and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.oracle.test.nativeimage;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.tests.integration.tools.service.RemoteTestException;
+
+import org.eclipse.microprofile.metrics.MetricFilter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test merging, ordering and draining of buffered writes.
+ */
+public class WriteBufferTest {
+
+    private static final String INSERT = "INSERT INTO test.pokemon (id, name, type) VALUES (?, ?, ?)";
+    private static final String UPDATE = "UPDATE test.pokemon SET name = ? WHERE id = ?";
+
+    private RecordingSession session;
+
+    // Buffer and registry register their metrics in the application registry.
+    @BeforeEach
+    void setUp() {
+        RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION).removeMatching(MetricFilter.ALL);
+        session = new RecordingSession();
+    }
+
+    // Test that writes of the same row are merged and flushed in order of their first write
+    @Test
+    void testMergeThenFlush() {
+        WriteBuffer buffer = buffer(Map.of("max-in-flight", "1"));
+        CompletionStage<Void> first = buffer.insert(1, "Bulbasaur", "grass");
+        CompletionStage<Void> merged = buffer.update(1, "Ivysaur");
+        buffer.insert(2, "Charmander", "fire");
+        buffer.update(3, "Squirtle");
+        buffer.update(3, "Wartortle");
+        buffer.update(4, "Pikachu");
+        buffer.insert(4, "Raichu", "electric");
+        assertThat(buffer.queueDepth(), is(4));
+        CompletableFuture<Void> flush = buffer.flushPending().toCompletableFuture();
+        // Single lane executes one write at a time
+        for (int i = 0; i < 4; i++) {
+            List<RecordingSession.Execution> executions = session.executions();
+            assertThat(executions.size(), is(i + 1));
+            assertThat(flush.isDone(), is(false));
+            executions.get(i).complete(null);
+        }
+        assertThat(flush.isDone(), is(true));
+        assertThat(first.toCompletableFuture().isDone(), is(true));
+        assertThat(merged.toCompletableFuture().isDone(), is(true));
+        List<RecordingSession.Execution> executions = session.executions();
+        verify(executions.get(0), INSERT, 1, "Ivysaur", "grass");
+        verify(executions.get(1), INSERT, 2, "Charmander", "fire");
+        verify(executions.get(2), UPDATE, "Wartortle", 3);
+        verify(executions.get(3), INSERT, 4, "Raichu", "electric");
+        assertThat(buffer.queueDepth(), is(0));
+        assertThat(buffer.mergeRatio(), is(100d * 3 / 7));
+    }
+
+    // Test that write accepted while previous write of the row is in flight is flushed after it
+    @Test
+    void testFlushOrdering() {
+        WriteBuffer buffer = buffer(Map.of());
+        buffer.insert(1, "Bulbasaur", "grass");
+        CompletableFuture<Void> firstFlush = buffer.flushPending().toCompletableFuture();
+        CompletionStage<Void> second = buffer.update(1, "Ivysaur");
+        CompletableFuture<Void> secondFlush = buffer.flushPending().toCompletableFuture();
+        assertThat(session.executions().size(), is(1));
+        session.executions().get(0).complete(null);
+        assertThat(firstFlush.isDone(), is(true));
+        assertThat(session.executions().size(), is(2));
+        verify(session.executions().get(1), UPDATE, "Ivysaur", 1);
+        assertThat(secondFlush.isDone(), is(false));
+        session.executions().get(1).complete(null);
+        assertThat(secondFlush.isDone(), is(true));
+        assertThat(second.toCompletableFuture().isDone(), is(true));
+    }
+
+    // Test that discarded write is completed and never flushed, and that failed write does not stop the flush
+    @Test
+    void testDiscardAndFailure() {
+        WriteBuffer buffer = buffer(Map.of());
+        CompletionStage<Void> discarded = buffer.insert(1, "Bulbasaur", "grass");
+        CompletionStage<Void> failing = buffer.insert(2, "Charmander", "fire");
+        CompletionStage<Void> written = buffer.insert(3, "Squirtle", "water");
+        assertThat(buffer.discard(1).toCompletableFuture().isDone(), is(true));
+        assertThat(discarded.toCompletableFuture().isDone(), is(true));
+        CompletableFuture<Void> flush = buffer.flushPending().toCompletableFuture();
+        List<RecordingSession.Execution> executions = session.executions();
+        assertThat(executions.size(), is(2));
+        verify(executions.get(0), INSERT, 2, "Charmander", "fire");
+        executions.get(0).fail(new IllegalStateException("Write failed"));
+        executions.get(1).complete(null);
+        assertThat(flush.isDone(), is(true));
+        assertThat(flush.isCompletedExceptionally(), is(false));
+        assertThat(failing.toCompletableFuture().isCompletedExceptionally(), is(true));
+        assertThat(written.toCompletableFuture().isCompletedExceptionally(), is(false));
+    }
+
+    // Test that drain flushes pending writes and waits for writes in flight, then rejects new writes
+    @Test
+    void testDrain() {
+        WriteBuffer buffer = buffer(Map.of());
+        buffer.insert(1, "Bulbasaur", "grass");
+        CompletableFuture<Void> inFlight = buffer.flushPending().toCompletableFuture();
+        CompletionStage<Void> pending = buffer.update(2, "Ivysaur");
+        CompletableFuture<Void> drained = buffer.drain().toCompletableFuture();
+        assertThrows(RemoteTestException.class, () -> buffer.update(3, "Venusaur"));
+        assertThat(session.executions().size(), is(1));
+        session.executions().get(0).complete(null);
+        assertThat(inFlight.isDone(), is(true));
+        assertThat(drained.isDone(), is(false));
+        verify(session.executions().get(1), UPDATE, "Ivysaur", 2);
+        session.executions().get(1).complete(null);
+        assertThat(drained.isDone(), is(true));
+        assertThat(pending.toCompletableFuture().isDone(), is(true));
+        assertThat(buffer.queueDepth(), is(0));
+    }
+
+    private static void verify(RecordingSession.Execution execution, String query, Object... values) {
+        assertThat(execution.query(), is(query));
+        assertThat(execution.values(), contains(values));
+    }
+
+    // Buffer is flushed explicitly, scheduled flush does not run during the test.
+    private WriteBuffer buffer(Map<String, String> properties) {
+        Map<String, String> config = new HashMap<>(properties);
+        config.put("enabled", "true");
+        config.put("window", "600000");
+        return WriteBuffer.create(Config.create(ConfigSources.create(config)),
+                                  session.registry(Map.of("insert", INSERT, "update", UPDATE)));
+    }
+
+}